@@ -9,6 +9,10 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    Ast() {
+        Metrics.AST_NODES.increment();
+    }
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
@@ -14,16 +14,29 @@ public final class Lexer {
     public List<Token> lex() {
         // SeanParrell1 is a new ArrayList we made to store all the tokens we find
         List<Token> SeanParrell1 = new ArrayList<>();
-        // loop while we still have chars in the input
-        while (chars.has(0)) {
-            // skip whitespace, we dont want to emit them as tokens
-            if (peek("[ \b\n\r\t]")) {
-                chars.advance();   // move forward in the stream
-                chars.skip();      // reset token length since we ignored this space
-            } else {
-                // otherwise, create a token and add it into our SeanParrell1 list
-                SeanParrell1.add(lexToken());
+        Metrics.StageEvent event = new Metrics.StageEvent("lex");
+        long start = System.nanoTime();
+        event.begin();
+        try {
+            // loop while we still have chars in the input
+            while (chars.has(0)) {
+                // skip whitespace, we dont want to emit them as tokens
+                if (peek("[ \b\n\r\t]")) {
+                    chars.advance();   // move forward in the stream
+                    chars.skip();      // reset token length since we ignored this space
+                } else {
+                    // otherwise, create a token and add it into our SeanParrell1 list
+                    SeanParrell1.add(lexToken());
+                }
             }
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            Metrics.LEX_NANOS.add(System.nanoTime() - start);
+            Metrics.TOKENS.add(SeanParrell1.size());
+            event.items = SeanParrell1.size();
+            event.commit();
         }
         // return the final list of tokens we collected
         return SeanParrell1;
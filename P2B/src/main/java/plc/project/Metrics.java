@@ -0,0 +1,112 @@
+package plc.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters for the lexer and parser, and the JFR events
+ * recording them. Every call to {@link Lexer#lex()} is recorded as a
+ * {@code plc.project.Stage} event, and the counters are sampled into a
+ * {@code plc.project.Counters} event every second while a recording is
+ * active, so a slow run can be attributed without attaching a profiler.
+ *
+ * Counters only ever increase; sample them twice to get a rate.
+ */
+public final class Metrics {
+
+    static final LongAdder TOKENS = new LongAdder();
+    static final LongAdder LEX_NANOS = new LongAdder();
+    static final LongAdder AST_NODES = new LongAdder();
+    static final LongAdder EXCEPTIONS = new LongAdder();
+
+    static {
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+            CountersEvent event = new CountersEvent();
+            event.tokens = TOKENS.sum();
+            event.lexNanos = LEX_NANOS.sum();
+            event.astNodes = AST_NODES.sum();
+            event.exceptions = EXCEPTIONS.sum();
+            event.commit();
+        });
+    }
+
+    private Metrics() {}
+
+    /**
+     * Returns the number of tokens lexed.
+     */
+    public static long getTokens() {
+        return TOKENS.sum();
+    }
+
+    /**
+     * Returns the average lexing throughput, or 0 if nothing was lexed.
+     */
+    public static double getTokensPerSecond() {
+        long nanos = LEX_NANOS.sum();
+        return nanos == 0 ? 0 : TOKENS.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Returns the number of AST nodes created.
+     */
+    public static long getAstNodes() {
+        return AST_NODES.sum();
+    }
+
+    /**
+     * Returns the number of inputs that failed to lex.
+     */
+    public static long getExceptions() {
+        return EXCEPTIONS.sum();
+    }
+
+    @Name("plc.project.Stage")
+    @Label("Pipeline Stage")
+    @Category("PLC")
+    @Description("One run of a compiler pipeline stage.")
+    static final class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Tokens")
+        long items;
+
+        StageEvent(String stage) {
+            this.stage = stage;
+        }
+
+    }
+
+    @Name("plc.project.Counters")
+    @Label("Lexer and Parser Counters")
+    @Category("PLC")
+    @Period("1 s")
+    static final class CountersEvent extends Event {
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Lexing Time")
+        @Timespan
+        long lexNanos;
+
+        @Label("AST Nodes")
+        long astNodes;
+
+        @Label("Exceptions")
+        long exceptions;
+
+    }
+
+}
@@ -470,6 +470,7 @@ public abstract class Ast {
             private final String operator;
             private final Ast.Expression left;
             private final Ast.Expression right;
+            private Specialization specialization = null;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
                 this.operator = operator;
@@ -489,6 +490,21 @@ public abstract class Ast {
                 return right;
             }
 
+            /**
+             * The interpreter's current specialization of this operator, which
+             * rewrites itself as operand types are observed.
+             */
+            Specialization getSpecialization() {
+                if (specialization == null) {
+                    specialization = Specialization.uninitialized(operator);
+                }
+                return specialization;
+            }
+
+            void setSpecialization(Specialization specialization) {
+                this.specialization = specialization;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -548,6 +564,7 @@ public abstract class Ast {
             private final Optional<Ast.Expression> receiver;
             private final String name;
             private final List<Ast.Expression> arguments;
+            private InlineCache cache = null;
 
             public Function(Optional<Ast.Expression> receiver, String name, List<Ast.Expression> arguments) {
                 this.receiver = receiver;
@@ -567,6 +584,17 @@ public abstract class Ast {
                 return arguments;
             }
 
+            /**
+             * The interpreter's cache of the function (or methods) this call
+             * site resolved to.
+             */
+            InlineCache getCache() {
+                if (cache == null) {
+                    cache = new InlineCache();
+                }
+                return cache;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Function &&
@@ -1,10 +1,36 @@
 package plc.project;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Environment {
 
+    /**
+     * Member scope shared by every value made through {@link #create}. Such
+     * values never define fields or methods of their own, so one empty scope
+     * serves all of them instead of a fresh scope (and two maps) per value.
+     */
+    private static final Scope VALUE_SCOPE = new Scope(null);
+
+    private static final long SMALL_INTEGER_MIN = -128;
+    private static final long SMALL_INTEGER_MAX = 1024;
+    private static final PlcObject[] SMALL_INTEGERS = new PlcObject[(int) (SMALL_INTEGER_MAX - SMALL_INTEGER_MIN + 1)];
+    private static final PlcObject[] CHARACTERS = new PlcObject[128];
+
+    public static final PlcObject TRUE = new PlcObject(VALUE_SCOPE, Boolean.TRUE);
+    public static final PlcObject FALSE = new PlcObject(VALUE_SCOPE, Boolean.FALSE);
+    public static final PlcObject EMPTY_STRING = new PlcObject(VALUE_SCOPE, "");
+
+    static {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = new PlcObject(VALUE_SCOPE, BigInteger.valueOf(SMALL_INTEGER_MIN + i));
+        }
+        for (char c = 0; c < CHARACTERS.length; c++) {
+            CHARACTERS[c] = new PlcObject(VALUE_SCOPE, Character.valueOf(c));
+        }
+    }
+
     public static final PlcObject NIL = create(new Object() {
 
         @Override
@@ -14,18 +40,82 @@ public class Environment {
 
     });
 
+    /**
+     * Wraps a value, returning a canonical instance for booleans, small
+     * integers, ASCII characters and the empty string. Values are immutable,
+     * so sharing them is safe.
+     */
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof BigInteger) {
+            BigInteger integer = (BigInteger) value;
+            if (integer.bitLength() < Long.SIZE) {
+                long small = integer.longValue();
+                if (small >= SMALL_INTEGER_MIN && small <= SMALL_INTEGER_MAX) {
+                    return SMALL_INTEGERS[(int) (small - SMALL_INTEGER_MIN)];
+                }
+            }
+        } else if (value instanceof Character) {
+            char c = (Character) value;
+            if (c < CHARACTERS.length) {
+                return CHARACTERS[c];
+            }
+        } else if ("".equals(value)) {
+            return EMPTY_STRING;
+        }
+        return new PlcObject(VALUE_SCOPE, value);
+    }
+
+    /**
+     * Creates an Integer object tagged with its primitive value; the
+     * {@link BigInteger} form is only materialized if {@link PlcObject#getValue()}
+     * is called.
+     */
+    public static PlcObject create(long value) {
+        if (value >= SMALL_INTEGER_MIN && value <= SMALL_INTEGER_MAX) {
+            return SMALL_INTEGERS[(int) (value - SMALL_INTEGER_MIN)];
+        }
+        return new PlcObject(VALUE_SCOPE, value);
     }
 
     public static final class PlcObject {
 
         private final Scope scope;
-        private final Object value;
+        private Object value;
+
+        /**
+         * Integers that fit in a {@code long} are tagged so arithmetic can stay
+         * on primitives; {@code value} is then computed lazily.
+         */
+        private final boolean small;
+        private final long smallValue;
 
         public PlcObject(Scope scope, Object value) {
             this.scope = scope;
             this.value = value;
+            if (value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+                this.small = true;
+                this.smallValue = ((BigInteger) value).longValue();
+            } else {
+                this.small = false;
+                this.smallValue = 0;
+            }
+        }
+
+        private PlcObject(Scope scope, long value) {
+            this.scope = scope;
+            this.value = null;
+            this.small = true;
+            this.smallValue = value;
+        }
+
+        public boolean isSmallInteger() {
+            return small;
+        }
+
+        public long getSmallInteger() {
+            return smallValue;
         }
 
         public Variable getField(String name) {
@@ -37,13 +127,31 @@ public class Environment {
         }
 
         public PlcObject callMethod(String name, List<PlcObject> arguments) {
-            Function function = scope.lookupFunction(name, arguments.size() + 1);
+            return callMethod(scope.lookupFunction(name, arguments.size() + 1), arguments);
+        }
+
+        /**
+         * Invokes a method already resolved from this object's members,
+         * passing this object as the first argument.
+         */
+        public PlcObject callMethod(Function function, List<PlcObject> arguments) {
             arguments = new ArrayList<>(arguments);
             arguments.add(0, this);
             return function.invoke(arguments);
         }
 
+        /**
+         * The scope holding this object's fields and methods; objects with the
+         * same scope resolve member lookups identically.
+         */
+        Scope getScope() {
+            return scope;
+        }
+
         public Object getValue() {
+            if (value == null && small) {
+                value = BigInteger.valueOf(smallValue);
+            }
             return value;
         }
 
@@ -51,7 +159,7 @@ public class Environment {
         public String toString() {
             return "Object{" +
                     "scope=" + scope +
-                    ", value=" + value +
+                    ", value=" + getValue() +
                     '}';
         }
 
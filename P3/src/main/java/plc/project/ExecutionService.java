@@ -0,0 +1,84 @@
+package plc.project;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs independent programs in parallel.
+ *
+ * Parsed {@link Ast.Source} trees are immutable apart from the interpreter's
+ * caches on them, which are safe to share, so one tree can be submitted any
+ * number of times. Everything mutable lives in a fresh {@link Interpreter}
+ * (and its scopes) created for each run.
+ *
+ * By default runs are scheduled on a work-stealing pool; any executor, such
+ * as one creating a virtual thread per task, can be supplied instead.
+ */
+public final class ExecutionService implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean owned;
+    private final Scope builtins;
+
+    public ExecutionService() {
+        this(Executors.newWorkStealingPool(), true, null);
+    }
+
+    /**
+     * Creates a service running on {@code executor}, which the caller keeps
+     * ownership of. {@code builtins}, if not null, is the parent scope of
+     * every run; it is shared between threads, so it must only hold native
+     * functions and must not be modified while runs are in progress.
+     */
+    public ExecutionService(ExecutorService executor, Scope builtins) {
+        this(executor, false, builtins);
+    }
+
+    private ExecutionService(ExecutorService executor, boolean owned, Scope builtins) {
+        this.executor = executor;
+        this.owned = owned;
+        this.builtins = builtins;
+    }
+
+    /**
+     * Runs {@code source} in its own interpreter, completing with the result
+     * of {@code main/0}. Output of {@code print} goes to {@code System.out}.
+     */
+    public CompletableFuture<Environment.PlcObject> submit(Ast.Source source) {
+        return submit(source, System.out);
+    }
+
+    /**
+     * Runs {@code source} in its own interpreter, with {@code print} writing
+     * to {@code out}.
+     */
+    public CompletableFuture<Environment.PlcObject> submit(Ast.Source source, PrintStream out) {
+        return CompletableFuture.supplyAsync(() -> new Interpreter(new Scope(builtins), out).visit(source), executor);
+    }
+
+    /**
+     * Runs every source in parallel, returning the futures in the same order.
+     */
+    public List<CompletableFuture<Environment.PlcObject>> submitAll(List<Ast.Source> sources) {
+        List<CompletableFuture<Environment.PlcObject>> results = new ArrayList<>(sources.size());
+        for (Ast.Source source : sources) {
+            results.add(submit(source));
+        }
+        return results;
+    }
+
+    /**
+     * Shuts down the executor if this service created it.
+     */
+    @Override
+    public void close() {
+        if (owned) {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-call-site cache of resolved functions, attached to an
+ * {@link Ast.Expression.Function} node by the {@link Interpreter}.
+ *
+ * Plain function calls are monomorphic. A call to a script method is cached
+ * as the method and its position among the script methods of the
+ * interpreter, which is the same in every interpreter running the tree
+ * (including forks), so it hits in all of them. Other calls resolve to the
+ * same function for a given global scope until a new function is defined
+ * there or in an enclosing scope, which {@link Scope#functionVersion()}
+ * detects. Method calls are polymorphic, caching up to {@link #MAX_METHODS}
+ * receivers keyed by their member scope; past that the site is megamorphic
+ * and always performs the full lookup.
+ *
+ * Entries are immutable and replaced as a whole, so a cache on an AST shared
+ * between interpreters on different threads stays consistent.
+ */
+final class InlineCache {
+
+    private static final int MAX_METHODS = 4;
+
+    private static final class Entry {
+
+        private final Scope scope;
+        private final int version;
+        private final Environment.Function function;
+
+        private Entry(Scope scope, int version, Environment.Function function) {
+            this.scope = scope;
+            this.version = version;
+            this.function = function;
+        }
+
+    }
+
+    private static final class Script {
+
+        private final List<Ast.Method> methods;
+        private final int count;
+        private final Ast.Method method;
+        private final int index;
+
+        private Script(List<Ast.Method> methods, int count, Ast.Method method, int index) {
+            this.methods = methods;
+            this.count = count;
+            this.method = method;
+            this.index = index;
+        }
+
+    }
+
+    private Script script = null;
+    private Entry function = null;
+    private Entry[] methods = new Entry[0];
+
+    /**
+     * Resolves a call to one of {@code methods}, the script methods defined
+     * in order in the interpreter's globals, returning its index or -1 if
+     * the call is to a native function. Only global scopes define functions
+     * and a script method can't be redefined there, so a method defined at
+     * the cached index is the one the call resolves to.
+     */
+    int lookupScript(List<Ast.Method> methods, String name, int arity) {
+        Script entry = script;
+        if (entry != null) {
+            if (entry.method != null && entry.index < methods.size() && methods.get(entry.index) == entry.method) {
+                return entry.index;
+            } else if (entry.method == null && entry.methods == methods && entry.count == methods.size()) {
+                return -1;
+            }
+        }
+        Metrics.CACHE_MISSES.increment();
+        for (int i = 0; i < methods.size(); i++) {
+            Ast.Method method = methods.get(i);
+            if (method.getName().equals(name) && method.getParameters().size() == arity) {
+                script = new Script(null, 0, method, i);
+                return i;
+            }
+        }
+        script = new Script(methods, methods.size(), null, -1);
+        return -1;
+    }
+
+    /**
+     * Resolves a function called from {@code current}, whose chain leads to
+     * the interpreter's {@code globals}. Only global scopes define functions,
+     * so the result depends on nothing but {@code globals} and its version.
+     */
+    Environment.Function lookupFunction(Scope globals, Scope current, String name, int arity) {
+        int version = globals.functionVersion();
+        Entry entry = function;
+        if (entry != null && entry.scope == globals && entry.version == version) {
+            return entry.function;
+        }
+        Metrics.CACHE_MISSES.increment();
+        Environment.Function resolved = current.lookupFunction(name, arity);
+        function = new Entry(globals, version, resolved);
+        return resolved;
+    }
+
+    /**
+     * Resolves a method on a receiver with the given member scope.
+     */
+    Environment.Function lookupMethod(Scope members, String name, int arity) {
+        int version = members.functionVersion();
+        Entry[] entries = methods;
+        for (Entry entry : entries) {
+            if (entry.scope == members && entry.version == version) {
+                return entry.function;
+            }
+        }
+        Metrics.CACHE_MISSES.increment();
+        Environment.Function resolved = members.lookupFunction(name, arity);
+        // keep the entries of other receivers still valid, then add this one
+        // unless the site is already megamorphic
+        Entry[] updated = new Entry[MAX_METHODS];
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.scope != members && entry.version == entry.scope.functionVersion()) {
+                updated[count++] = entry;
+            }
+        }
+        if (count < MAX_METHODS) {
+            updated[count++] = new Entry(members, version, resolved);
+            methods = Arrays.copyOf(updated, count);
+        }
+        return resolved;
+    }
+
+}
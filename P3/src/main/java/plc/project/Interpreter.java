@@ -1,10 +1,12 @@
 package plc.project;
 
 import plc.project.Ast;
-import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.io.PrintStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Interpreter — traverses the AST and evaluates nodes for our custom language.
@@ -15,19 +17,199 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope;
 
+    /**
+     * The scope functions are defined in; every other scope descends from it.
+     */
+    private final Scope globals;
+
+    /**
+     * Completion signal for RETURN: holds the returned value while statements
+     * unwind to the enclosing method, and is null when they complete normally.
+     * Replaces a thrown exception so returning doesn't capture a stack trace.
+     */
+    private Environment.PlcObject returnValue = null;
+
+    /**
+     * Number of script methods currently executing, so a RETURN outside of
+     * any method can still be reported.
+     */
+    private int depth = 0;
+
+    private final PrintStream out;
+
+    /**
+     * Steps between checkpoints. A step is a loop iteration or a call;
+     * limits, deadlines and cancellation are only checked at checkpoints, so
+     * the hot path is a single decrement.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Steps left before the next checkpoint, and the number of steps the
+     * countdown was last reset to.
+     */
+    private long countdown = CHECK_INTERVAL;
+    private long slice = CHECK_INTERVAL;
+
+    /**
+     * Steps left in the budget, shared with forks, as of the last checkpoint
+     * of any of them.
+     */
+    private final AtomicLong budget;
+
+    /**
+     * {@link System#nanoTime()} after which execution stops, if any.
+     */
+    private long deadline = 0;
+    private boolean hasDeadline = false;
+
+    /**
+     * Set by {@link #cancel()} from any thread; shared with forks.
+     */
+    private final AtomicBoolean cancelled;
+
+    private Runnable checkpoint = null;
+
+    /**
+     * Whether this is a {@link #fork()}, which must not assign the fields it
+     * shares with other threads.
+     */
+    private final boolean forked;
+
+    /**
+     * Script methods defined so far, in order, replayed into every
+     * {@link #fork()}.
+     */
+    private final List<Ast.Method> methods = new ArrayList<>();
+
     public Interpreter(Scope parent) {
+        this(parent, System.out);
+    }
+
+    /**
+     * Creates an interpreter whose {@code print} writes to {@code out}, so
+     * runs executing side by side can keep their output apart.
+     */
+    public Interpreter(Scope parent, PrintStream out) {
+        this(parent, out, new AtomicBoolean(), new AtomicLong(Long.MAX_VALUE), false);
+    }
+
+    private Interpreter(Scope parent, PrintStream out, AtomicBoolean cancelled, AtomicLong budget, boolean forked) {
+        this.cancelled = cancelled;
+        this.budget = budget;
+        this.forked = forked;
         scope = new Scope(parent);
+        globals = scope;
+        this.out = out;
         // Built-in print(x): prints the unwrapped value and returns NIL
         scope.defineFunction("print", 1, args -> {
-            System.out.println(args.get(0).getValue());
+            out.println(args.get(0).getValue());
             return Environment.NIL;
         });
+        ParallelBuiltins.define(scope, this);
     }
 
     public Scope getScope() {
         return scope;
     }
 
+    /**
+     * Creates an interpreter for running script methods on another thread.
+     * It sees this interpreter's fields but has its own scopes and its own
+     * definitions of every script method, so the two never share state
+     * besides the fields themselves, which the fork may read but not assign.
+     * Defining the methods again takes a while, so a fork should be reused
+     * for every call it makes on its thread.
+     *
+     * The fork is cancelled along with this interpreter, inherits its
+     * deadline and checkpoint, and counts its steps against the same budget;
+     * it must be {@link #settle() settled} once done.
+     */
+    Interpreter fork() {
+        Interpreter fork = new Interpreter(globals, out, cancelled, budget, true);
+        fork.deadline = deadline;
+        fork.hasDeadline = hasDeadline;
+        fork.checkpoint = checkpoint;
+        fork.reset();
+        for (Ast.Method method : methods) {
+            fork.visit(method);
+        }
+        return fork;
+    }
+
+    /**
+     * Limits execution to {@code steps} further loop iterations and calls.
+     */
+    public void setStepLimit(long steps) {
+        budget.set(steps);
+        reset();
+    }
+
+    /**
+     * Charges the steps counted since the last checkpoint to the budget,
+     * for a fork that is done.
+     */
+    void settle() {
+        budget.addAndGet(-(slice - countdown));
+        reset();
+    }
+
+    /**
+     * Stops execution once {@code timeout} has elapsed from now. The clock
+     * is only read at checkpoints, so the deadline may be overrun by up to
+     * one checkpoint interval.
+     */
+    public void setDeadline(Duration timeout) {
+        deadline = System.nanoTime() + timeout.toNanos();
+        hasDeadline = true;
+    }
+
+    /**
+     * Sets a hook run at every checkpoint on the executing thread, which a
+     * scheduler may use to time-slice scripts (e.g. by yielding or blocking)
+     * or to preempt them by throwing.
+     */
+    public void setCheckpoint(Runnable checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Requests that execution stop at the next checkpoint. Safe to call from
+     * any thread; interrupting the executing thread has the same effect.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void reset() {
+        slice = Math.max(0, Math.min(CHECK_INTERVAL, budget.get()));
+        countdown = slice;
+    }
+
+    /**
+     * Counts a step, checking limits once per interval.
+     */
+    private void step() {
+        if (--countdown < 0) {
+            checkpoint();
+        }
+    }
+
+    private void checkpoint() {
+        if (budget.addAndGet(-slice) <= 0) {
+            throw new RuntimeException("Step limit exceeded.");
+        } else if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException("Execution cancelled.");
+        } else if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new RuntimeException("Deadline exceeded.");
+        }
+        if (checkpoint != null) {
+            checkpoint.run();
+        }
+        reset();
+        countdown--; // the step being counted
+    }
+
     /* ============================================================
        Helper methods
        ============================================================ */
@@ -44,7 +226,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 " but got " + value.getValue().getClass().getName());
     }
 
-    private Environment.PlcObject visit(Ast.Statement stmt) {
+    /**
+     * Dispatches to the visit method for the statement's type. Subclasses may
+     * override this to observe every statement executed.
+     */
+    protected Environment.PlcObject visit(Ast.Statement stmt) {
         if (stmt instanceof Ast.Statement.Expression) {
             return visit((Ast.Statement.Expression) stmt);
         } else if (stmt instanceof Ast.Statement.Declaration) {
@@ -63,86 +249,38 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             throw new RuntimeException("Unknown statement type: " + stmt.getClass().getName());
         }
     }
+    /**
+     * Whether a block declares variables of its own. Blocks that don't can run
+     * directly in the enclosing scope without allocating one.
+     */
+    private static boolean declaresVariables(List<Ast.Statement> statements) {
+        for (Ast.Statement stmt : statements) {
+            if (stmt instanceof Ast.Statement.Declaration) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Scope blockScope(List<Ast.Statement> statements) {
+        return declaresVariables(statements) ? new Scope(scope) : scope;
+    }
+
     private void execBlock(List<Ast.Statement> statements, Scope blockScope) {
         Scope previous = scope;
         try {
             scope = blockScope;
             for (Ast.Statement stmt : statements) {
                 visit(stmt);
+                if (returnValue != null) {
+                    return;
+                }
             }
         } finally {
             scope = previous;
         }
     }
 
-    private int compareNumbers(Environment.PlcObject a, Environment.PlcObject b) {
-        Object av = a.getValue(), bv = b.getValue();
-        if (av instanceof BigDecimal || bv instanceof BigDecimal) {
-            BigDecimal x = (av instanceof BigDecimal)
-                    ? (BigDecimal) av : new BigDecimal((BigInteger) av);
-            BigDecimal y = (bv instanceof BigDecimal)
-                    ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
-            return x.compareTo(y);
-        } else {
-            return ((BigInteger) av).compareTo((BigInteger) bv);
-        }
-    }
-
-    private Environment.PlcObject add(Environment.PlcObject a, Environment.PlcObject b) {
-        Object av = a.getValue(), bv = b.getValue();
-        if (av instanceof String || bv instanceof String) {
-            return obj(String.valueOf(av) + String.valueOf(bv));
-        }
-        if (av instanceof BigDecimal || bv instanceof BigDecimal) {
-            BigDecimal x = (av instanceof BigDecimal)
-                    ? (BigDecimal) av : new BigDecimal((BigInteger) av);
-            BigDecimal y = (bv instanceof BigDecimal)
-                    ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
-            return obj(x.add(y));
-        }
-        return obj(((BigInteger) av).add((BigInteger) bv));
-    }
-
-    private Environment.PlcObject sub(Environment.PlcObject a, Environment.PlcObject b) {
-        Object av = a.getValue(), bv = b.getValue();
-        if (av instanceof BigDecimal || bv instanceof BigDecimal) {
-            BigDecimal x = (av instanceof BigDecimal)
-                    ? (BigDecimal) av : new BigDecimal((BigInteger) av);
-            BigDecimal y = (bv instanceof BigDecimal)
-                    ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
-            return obj(x.subtract(y));
-        }
-        return obj(((BigInteger) av).subtract((BigInteger) bv));
-    }
-
-    private Environment.PlcObject mul(Environment.PlcObject a, Environment.PlcObject b) {
-        Object av = a.getValue(), bv = b.getValue();
-        if (av instanceof BigDecimal || bv instanceof BigDecimal) {
-            BigDecimal x = (av instanceof BigDecimal)
-                    ? (BigDecimal) av : new BigDecimal((BigInteger) av);
-            BigDecimal y = (bv instanceof BigDecimal)
-                    ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
-            return obj(x.multiply(y));
-        }
-        return obj(((BigInteger) av).multiply((BigInteger) bv));
-    }
-
-    private Environment.PlcObject div(Environment.PlcObject a, Environment.PlcObject b) {
-        Object av = a.getValue(), bv = b.getValue();
-        if (av instanceof BigDecimal || bv instanceof BigDecimal) {
-            BigDecimal x = (av instanceof BigDecimal)
-                    ? (BigDecimal) av : new BigDecimal((BigInteger) av);
-            BigDecimal y = (bv instanceof BigDecimal)
-                    ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
-
-            // Divide with 1 decimal of precision, rounding half up
-            BigDecimal result = x.divide(y, 1, java.math.RoundingMode.HALF_UP);
-            return obj(result.stripTrailingZeros());
-        }
-        // Integer division for BigIntegers
-        return obj(((BigInteger) av).divide((BigInteger) bv));
-    }
-
     /* ============================================================
        Visiting top-level structures
        ============================================================ */
@@ -164,9 +302,19 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     }
 
     public Environment.PlcObject visit(Ast.Source ast) {
-        for (Ast.Field f : ast.getFields()) visit(f);
-        for (Ast.Method m : ast.getMethods()) visit(m);
-        return scope.lookupFunction("main", 0).invoke(List.of());
+        Metrics.StageEvent event = new Metrics.StageEvent("interpret");
+        event.begin();
+        try {
+            for (Ast.Field f : ast.getFields()) visit(f);
+            for (Ast.Method m : ast.getMethods()) visit(m);
+            return scope.lookupFunction("main", 0).invoke(List.of());
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            event.items = ast.getFields().size() + ast.getMethods().size();
+            event.commit();
+        }
     }
 
     public Environment.PlcObject visit(Ast.Field ast) {
@@ -179,24 +327,36 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Method ast) {
         final String name = ast.getName();
         final int arity = ast.getParameters().size();
-        scope.defineFunction(name, arity, args -> {
-            Scope saved = this.scope;
-            this.scope = new Scope(saved);
-            try {
-                for (int i = 0; i < arity; i++) {
-                    this.scope.defineVariable(ast.getParameters().get(i), false, args.get(i));
-                }
-                try {
-                    for (Ast.Statement s : ast.getStatements()) visit(s);
-                } catch (Return r) {
-                    return r.value;
+        scope.defineFunction(name, arity, args -> invoke(ast, args));
+        methods.add(ast);
+        return Environment.NIL;
+    }
+
+    /**
+     * Runs a script method's body with {@code args} bound to its parameters.
+     * Subclasses may override this to observe calls.
+     */
+    protected Environment.PlcObject invoke(Ast.Method ast, List<Environment.PlcObject> args) {
+        Scope saved = this.scope;
+        this.scope = new Scope(saved);
+        depth++;
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                this.scope.defineVariable(ast.getParameters().get(i), false, args.get(i));
+            }
+            for (Ast.Statement s : ast.getStatements()) {
+                visit(s);
+                if (returnValue != null) {
+                    Environment.PlcObject result = returnValue;
+                    returnValue = null;
+                    return result;
                 }
-                return Environment.NIL;
-            } finally {
-                this.scope = saved;
             }
-        });
-        return Environment.NIL;
+            return Environment.NIL;
+        } finally {
+            depth--;
+            this.scope = saved;
+        }
     }
 
     /* ============================================================
@@ -228,6 +388,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.Variable var = scope.lookupVariable(access.getName());
             if (var.getConstant()) {
                 throw new RuntimeException("Cannot assign to constant: " + access.getName());
+            } else if (forked && !scope.definesVariable(access.getName(), globals)) {
+                throw new RuntimeException("Cannot assign to field in a parallel callback: " + access.getName());
             }
             var.setValue(value);
         }
@@ -237,17 +399,25 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.If ast) {
         boolean cond = requireType(Boolean.class, visit(ast.getCondition()));
         if (cond) {
-            execBlock(ast.getThenStatements(), new Scope(scope));
+            execBlock(ast.getThenStatements(), blockScope(ast.getThenStatements()));
         } else {
-            execBlock(ast.getElseStatements(), new Scope(scope));
+            execBlock(ast.getElseStatements(), blockScope(ast.getElseStatements()));
         }
         return Environment.NIL;
     }
 
     public Environment.PlcObject visit(Ast.Statement.While ast) {
-        Scope loopScope = new Scope(scope);
+        // one scope serves every iteration, cleared in between
+        Scope loopScope = blockScope(ast.getStatements());
         while (requireType(Boolean.class, visit(ast.getCondition()))) {
+            step();
+            if (loopScope != scope) {
+                loopScope.clear();
+            }
             execBlock(ast.getStatements(), loopScope);
+            if (returnValue != null) {
+                break;
+            }
         }
         return Environment.NIL;
     }
@@ -257,10 +427,20 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             visit(ast.getInitialization());
         }
 
+        // one scope serves every iteration, cleared in between
+        Scope loopScope = blockScope(ast.getStatements());
+
         // Loop while condition evaluates to true
         while (requireType(Boolean.class, visit(ast.getCondition()))) {
-            // Execute the loop body inside a new child scope
-            execBlock(ast.getStatements(), new Scope(scope));
+            step();
+            // Execute the loop body inside the (reset) child scope
+            if (loopScope != scope) {
+                loopScope.clear();
+            }
+            execBlock(ast.getStatements(), loopScope);
+            if (returnValue != null) {
+                break;
+            }
             // Run the increment statement (e.g., num = num + 1)
             if (ast.getIncrement() != null) {
                 visit(ast.getIncrement());
@@ -270,7 +450,12 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return Environment.NIL;
     }
     public Environment.PlcObject visit(Ast.Statement.Return ast) {
-        throw new Return(visit(ast.getValue()));
+        if (depth == 0) {
+            throw new RuntimeException("Return outside of a method.");
+        }
+        // signal the enclosing block, loop and method to stop executing
+        returnValue = visit(ast.getValue());
+        return Environment.NIL;
     }
 
     private Environment.PlcObject visit(Ast.Expression expr) {
@@ -335,19 +520,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
         Environment.PlcObject right = visit(ast.getRight());
 
-        switch (op) {
-            case "+":  return add(left, right);
-            case "-":  return sub(left, right);
-            case "*":  return mul(left, right);
-            case "/":  return div(left, right);
-            case "==": return obj(left.getValue().equals(right.getValue()));
-            case "!=": return obj(!left.getValue().equals(right.getValue()));
-            case "<":  return obj(compareNumbers(left, right) < 0);
-            case "<=": return obj(compareNumbers(left, right) <= 0);
-            case ">":  return obj(compareNumbers(left, right) > 0);
-            case ">=": return obj(compareNumbers(left, right) >= 0);
-            default:   throw new RuntimeException("Unknown operator " + op);
-        }
+        // arithmetic and comparison go through the node's self-specializing
+        // implementation, which skips the type tests once it has seen the operands
+        return ast.getSpecialization().execute(ast, left, right);
     }
 
     public Environment.PlcObject visit(Ast.Expression.Access ast) {
@@ -359,20 +534,19 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     }
 
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
-        List<Environment.PlcObject> args = new ArrayList<>();
+        step();
+        Metrics.INVOCATIONS.increment();
+        List<Environment.PlcObject> args = new ArrayList<>(ast.getArguments().size());
         for (Ast.Expression e : ast.getArguments()) args.add(visit(e));
+        InlineCache cache = ast.getCache();
         if (ast.getReceiver().isPresent()) {
             Environment.PlcObject recv = visit(ast.getReceiver().get());
-            return recv.callMethod(ast.getName(), args);
+            return recv.callMethod(cache.lookupMethod(recv.getScope(), ast.getName(), args.size() + 1), args);
         }
-        return scope.lookupFunction(ast.getName(), ast.getArguments().size()).invoke(args);
-    }
-
-    /* ============================================================
-       Return-signal helper
-       ============================================================ */
-    private static class Return extends RuntimeException {
-        final Environment.PlcObject value;
-        Return(Environment.PlcObject value) { this.value = value; }
+        int index = cache.lookupScript(methods, ast.getName(), args.size());
+        if (index >= 0) {
+            return invoke(methods.get(index), args);
+        }
+        return cache.lookupFunction(globals, scope, ast.getName(), args.size()).invoke(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package plc.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters for the interpreter, and the JFR events recording
+ * them. Every program run is recorded as a {@code plc.project.Stage} event,
+ * and the counters are sampled into a {@code plc.project.Counters} event
+ * every second while a recording is active, so a slow run can be attributed
+ * without attaching a profiler.
+ *
+ * Counters only ever increase; sample them twice to get a rate.
+ */
+public final class Metrics {
+
+    static final LongAdder SCOPES = new LongAdder();
+    static final LongAdder INVOCATIONS = new LongAdder();
+    static final LongAdder EXCEPTIONS = new LongAdder();
+    static final LongAdder CACHE_MISSES = new LongAdder();
+
+    static {
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+            CountersEvent event = new CountersEvent();
+            event.scopes = SCOPES.sum();
+            event.invocations = INVOCATIONS.sum();
+            event.exceptions = EXCEPTIONS.sum();
+            event.cacheMisses = CACHE_MISSES.sum();
+            event.commit();
+        });
+    }
+
+    private Metrics() {}
+
+    /**
+     * Returns the number of scopes allocated.
+     */
+    public static long getScopes() {
+        return SCOPES.sum();
+    }
+
+    /**
+     * Returns the number of function and method calls evaluated.
+     */
+    public static long getInvocations() {
+        return INVOCATIONS.sum();
+    }
+
+    /**
+     * Returns the number of programs whose run ended in an exception.
+     */
+    public static long getExceptions() {
+        return EXCEPTIONS.sum();
+    }
+
+    /**
+     * Returns the number of calls whose call-site cache had to perform the
+     * full lookup.
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Name("plc.project.Stage")
+    @Label("Pipeline Stage")
+    @Category("PLC")
+    @Description("One run of a compiler pipeline stage.")
+    static final class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Declarations")
+        long items;
+
+        StageEvent(String stage) {
+            this.stage = stage;
+        }
+
+    }
+
+    @Name("plc.project.Counters")
+    @Label("Interpreter Counters")
+    @Category("PLC")
+    @Period("1 s")
+    static final class CountersEvent extends Event {
+
+        @Label("Scopes Allocated")
+        long scopes;
+
+        @Label("Invocations")
+        long invocations;
+
+        @Label("Exceptions")
+        long exceptions;
+
+        @Label("Call Cache Misses")
+        long cacheMisses;
+
+    }
+
+}
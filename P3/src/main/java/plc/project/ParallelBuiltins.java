@@ -0,0 +1,172 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Data-parallel builtins for script code, run on the common
+ * {@link ForkJoinPool}:
+ *
+ * - {@code parallelFor(start, end, "fn")} calls {@code fn(i)} for every
+ *   Integer {@code i} in {@code [start, end)} and returns NIL.
+ * - {@code parallelSum(start, end, "fn")} returns the sum (as with
+ *   {@code +}) of {@code fn(i)} over the same range, or 0 if it is empty.
+ * - {@code parallelMap(list, "fn")} calls {@code fn} on each element of a
+ *   {@link List} value and returns a new List of the results, in order.
+ *
+ * The language has no function values, so callbacks are named by a String
+ * and must take exactly one argument. Each task runs its share of the calls
+ * in a {@link Interpreter#fork() fork} of the calling interpreter, so every
+ * call gets its own child scope of the program's globals, and all of them
+ * count their steps against the caller's limit. A fork is handed on to the
+ * next task once its own are done, so a builtin creates about one per worker
+ * thread. Callbacks may read fields but assigning one is an error, as all
+ * tasks share them.
+ */
+final class ParallelBuiltins {
+
+    private ParallelBuiltins() {}
+
+    static void define(Scope scope, Interpreter interpreter) {
+        scope.defineFunction("parallelFor", 3, args -> {
+            long start = integer(args.get(0)), end = integer(args.get(1));
+            ForkJoinPool.commonPool().invoke(new Task(new Forks(interpreter), name(args.get(2)), null, null, start, Math.max(start, end), false));
+            return Environment.NIL;
+        });
+        scope.defineFunction("parallelSum", 3, args -> {
+            long start = integer(args.get(0)), end = integer(args.get(1));
+            return ForkJoinPool.commonPool().invoke(new Task(new Forks(interpreter), name(args.get(2)), null, null, start, Math.max(start, end), true));
+        });
+        scope.defineFunction("parallelMap", 2, args -> {
+            if (!(args.get(0).getValue() instanceof List)) {
+                throw new RuntimeException("Expected " + List.class.getName() +
+                        " but got " + args.get(0).getValue().getClass().getName());
+            }
+            List<?> input = (List<?>) args.get(0).getValue();
+            Object[] results = new Object[input.size()];
+            ForkJoinPool.commonPool().invoke(new Task(new Forks(interpreter), name(args.get(1)), input, results, 0, input.size(), false));
+            return Environment.create(Collections.unmodifiableList(Arrays.asList(results)));
+        });
+    }
+
+    private static long integer(Environment.PlcObject value) {
+        if (value.isSmallInteger()) {
+            return value.getSmallInteger();
+        } else if (value.getValue() instanceof BigInteger) {
+            throw new RuntimeException("Range bound out of range: " + value.getValue());
+        }
+        throw new RuntimeException("Expected " + BigInteger.class.getName() +
+                " but got " + value.getValue().getClass().getName());
+    }
+
+    private static String name(Environment.PlcObject value) {
+        if (value.getValue() instanceof String) {
+            return (String) value.getValue();
+        }
+        throw new RuntimeException("Expected " + String.class.getName() +
+                " but got " + value.getValue().getClass().getName());
+    }
+
+    /**
+     * The forks of an interpreter not in use by any task of one builtin call.
+     */
+    private static final class Forks {
+
+        private final Interpreter interpreter;
+        private final Queue<Interpreter> idle = new ConcurrentLinkedQueue<>();
+
+        private Forks(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        private Interpreter acquire() {
+            Interpreter fork = idle.poll();
+            return fork != null ? fork : interpreter.fork();
+        }
+
+        private void release(Interpreter fork) {
+            fork.settle();
+            idle.offer(fork);
+        }
+
+    }
+
+    /**
+     * Calls the callback for indices {@code [from, to)}, splitting the range
+     * until it is small enough to run in a single fork.
+     */
+    private static final class Task extends RecursiveTask<Environment.PlcObject> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Forks forks;
+        private final String name;
+        private final List<?> input;
+        private final Object[] results;
+        private final long from;
+        private final long to;
+        private final boolean sum;
+
+        private Task(Forks forks, String name, List<?> input, Object[] results, long from, long to, boolean sum) {
+            this.forks = forks;
+            this.name = name;
+            this.input = input;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.sum = sum;
+        }
+
+        @Override
+        protected Environment.PlcObject compute() {
+            long threshold = Math.max(1, (to - from) / (ForkJoinPool.getCommonPoolParallelism() * 4L));
+            return compute(threshold);
+        }
+
+        private Environment.PlcObject compute(long threshold) {
+            if (to - from <= threshold) {
+                return run();
+            }
+            long middle = from + (to - from) / 2;
+            Task left = new Task(forks, name, input, results, from, middle, sum);
+            Task right = new Task(forks, name, input, results, middle, to, sum);
+            left.fork();
+            Environment.PlcObject r = right.compute(threshold);
+            Environment.PlcObject l = left.join();
+            return sum ? Specialization.evaluate("+", l, r) : Environment.NIL;
+        }
+
+        // Distinct from RecursiveTask.compute() so splitting keeps one threshold.
+        private Environment.PlcObject run() {
+            Interpreter fork = forks.acquire();
+            try {
+                Environment.Function function = fork.getScope().lookupFunction(name, 1);
+                Environment.PlcObject total = Environment.create(0L);
+                for (long i = from; i < to; i++) {
+                    Environment.PlcObject argument = input == null ? Environment.create(i) : wrap(input.get((int) i));
+                    Environment.PlcObject result = function.invoke(List.of(argument));
+                    if (results != null) {
+                        results[(int) i] = result.getValue();
+                    } else if (sum) {
+                        total = Specialization.evaluate("+", total, result);
+                    }
+                }
+                return sum ? total : Environment.NIL;
+            } finally {
+                forks.release(fork);
+            }
+        }
+
+        private static Environment.PlcObject wrap(Object element) {
+            return element == null ? Environment.NIL : Environment.create(element);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package plc.project;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link Interpreter} that records where a script spends its time.
+ *
+ * Every statement executed is counted and timed (including the statements
+ * nested in it), and every script method call is attributed to its call
+ * stack. The results are available as a collapsed-stacks report, which
+ * flame graph tools read directly, and as a list of the hottest methods.
+ *
+ * Profiling lives entirely in this subclass, so a plain {@link Interpreter}
+ * pays nothing for it. Calls made by the parallel builtins run in forks of
+ * the interpreter and aren't profiled.
+ */
+public final class ProfilingInterpreter extends Interpreter {
+
+    private final Map<Ast.Statement, Counter> statements = new IdentityHashMap<>();
+    private final Map<Ast.Method, MethodProfile> methods = new IdentityHashMap<>();
+    private final Map<String, Long> stacks = new LinkedHashMap<>();
+
+    /**
+     * The method calls currently executing, innermost last.
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    public ProfilingInterpreter(Scope parent) {
+        super(parent);
+    }
+
+    public ProfilingInterpreter(Scope parent, PrintStream out) {
+        super(parent, out);
+    }
+
+    @Override
+    protected Environment.PlcObject visit(Ast.Statement stmt) {
+        Counter counter = statements.computeIfAbsent(stmt, s -> new Counter());
+        long start = System.nanoTime();
+        try {
+            return super.visit(stmt);
+        } finally {
+            counter.count++;
+            counter.nanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    protected Environment.PlcObject invoke(Ast.Method ast, List<Environment.PlcObject> args) {
+        MethodProfile profile = methods.computeIfAbsent(ast, MethodProfile::new);
+        Frame frame = new Frame(frames.isEmpty() ? ast.getName() : frames.get(frames.size() - 1).stack + ";" + ast.getName());
+        frames.add(frame);
+        profile.active++;
+        long start = System.nanoTime();
+        try {
+            return super.invoke(ast, args);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            frames.remove(frames.size() - 1);
+            profile.active--;
+            profile.calls++;
+            profile.selfNanos += elapsed - frame.childNanos;
+            // recursive calls are already included in the outermost one
+            if (profile.active == 0) {
+                profile.totalNanos += elapsed;
+            }
+            if (!frames.isEmpty()) {
+                frames.get(frames.size() - 1).childNanos += elapsed;
+            }
+            stacks.merge(frame.stack, elapsed - frame.childNanos, Long::sum);
+        }
+    }
+
+    /**
+     * Returns how many times {@code stmt} has been executed.
+     */
+    public long getCount(Ast.Statement stmt) {
+        Counter counter = statements.get(stmt);
+        return counter == null ? 0 : counter.count;
+    }
+
+    /**
+     * Returns the nanoseconds spent executing {@code stmt}, including the
+     * statements and calls nested in it.
+     */
+    public long getNanos(Ast.Statement stmt) {
+        Counter counter = statements.get(stmt);
+        return counter == null ? 0 : counter.nanos;
+    }
+
+    /**
+     * Returns the profiled time in collapsed-stacks format: one line per
+     * distinct call stack, of the form {@code main;outer;inner 1234}, giving
+     * the nanoseconds spent in the innermost method itself.
+     */
+    public String getCollapsedStacks() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns up to {@code n} methods that spent the most time in their own
+     * bodies, hottest first.
+     */
+    public List<MethodProfile> getHotMethods(int n) {
+        List<MethodProfile> hot = new ArrayList<>(methods.values());
+        hot.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+        return hot.subList(0, Math.min(n, hot.size()));
+    }
+
+    private static final class Counter {
+
+        private long count;
+        private long nanos;
+
+    }
+
+    private static final class Frame {
+
+        private final String stack;
+        private long childNanos;
+
+        private Frame(String stack) {
+            this.stack = stack;
+        }
+
+    }
+
+    /**
+     * Time spent in a script method: self time excludes the methods it
+     * calls, total time includes them.
+     */
+    public static final class MethodProfile {
+
+        private final Ast.Method method;
+        private long calls;
+        private long selfNanos;
+        private long totalNanos;
+        private int active;
+
+        private MethodProfile(Ast.Method method) {
+            this.method = method;
+        }
+
+        public Ast.Method getMethod() {
+            return method;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return method.getName() + "/" + method.getParameters().size() +
+                    " calls=" + calls + " self=" + selfNanos + "ns total=" + totalNanos + "ns";
+        }
+
+    }
+
+}
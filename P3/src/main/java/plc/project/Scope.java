@@ -1,5 +1,6 @@
 package plc.project;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,11 +9,19 @@ import java.util.function.Function;
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+
+    /**
+     * Number of functions defined in this scope (see {@link #functionVersion()}).
+     */
+    private int definedFunctions = 0;
+
+    // Allocated on first definition; most block and value scopes never define anything.
+    private Map<String, Environment.Variable> variables = Collections.emptyMap();
+    private Map<String, Environment.Function> functions = Collections.emptyMap();
 
     public Scope(Scope parent) {
         this.parent = parent;
+        Metrics.SCOPES.increment();
     }
 
     public Scope getParent() {
@@ -23,36 +32,101 @@ public final class Scope {
         if (variables.containsKey(name)) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
+            // a map emptied by clear() is kept for the next iteration
+            if (variables == Collections.<String, Environment.Variable>emptyMap()) {
+                variables = new HashMap<>();
+            }
             variables.put(name, new Environment.Variable(name, constant, value));
         }
     }
 
+    /**
+     * Removes every variable defined in this scope so it can be reused for
+     * the next execution of the same block, e.g. the next loop iteration.
+     */
+    void clear() {
+        if (!variables.isEmpty()) {
+            variables.clear();
+        }
+    }
+
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
-            throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+        // walk the chain iteratively; deep call chains make it arbitrarily long
+        for (Scope current = this; current != null; current = current.parent) {
+            Environment.Variable variable = current.variables.get(name);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+    }
+
+    /**
+     * Returns whether {@code name} is defined in this scope or an enclosing
+     * one below {@code outer}, i.e. without reaching {@code outer}.
+     */
+    boolean definesVariable(String name, Scope outer) {
+        for (Scope current = this; current != outer && current != null; current = current.parent) {
+            if (current.variables.containsKey(name)) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Returns whether every variable defined in this scope or an enclosing
+     * one below {@code outer} is named in {@code names}, so a child scope
+     * defining all of them would hide the whole chain down to {@code outer}.
+     */
+    boolean definesOnly(List<String> names, Scope outer) {
+        for (Scope current = this; current != outer && current != null; current = current.parent) {
+            for (String name : current.variables.keySet()) {
+                if (!names.contains(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
         if (functions.containsKey(name + "/" + arity)) {
             throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
         } else {
+            if (functions == Collections.<String, Environment.Function>emptyMap()) {
+                functions = new HashMap<>();
+            }
             functions.put(name + "/" + arity, new Environment.Function(name, arity, function));
+            definedFunctions++;
         }
     }
 
+    /**
+     * Returns a version of the functions visible from this scope, which
+     * changes whenever it or an enclosing scope defines one. Call-site
+     * caches record the version they resolved against, so comparing it is
+     * enough to know no definition could have shadowed the cached function
+     * since. Chains defining functions (globals and their parent, or member
+     * scopes) are short, so this is cheap.
+     */
+    int functionVersion() {
+        int version = 0;
+        for (Scope current = this; current != null; current = current.parent) {
+            version += current.definedFunctions;
+        }
+        return version;
+    }
+
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
-            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        String key = name + "/" + arity;
+        for (Scope current = this; current != null; current = current.parent) {
+            Environment.Function function = current.functions.get(key);
+            if (function != null) {
+                return function;
+            }
         }
+        throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
     }
 
     @Override
@@ -0,0 +1,273 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Self-specializing implementation of a binary operator, attached to an
+ * {@link Ast.Expression.Binary} node by the {@link Interpreter}.
+ *
+ * A node starts out {@link #uninitialized(String) uninitialized}. The first
+ * evaluation observes the operand types and rewrites the node into a
+ * specialization for those types (e.g. Integer-only addition), which only
+ * checks a single guard instead of re-testing every {@code instanceof}. If a
+ * guard ever fails the node deoptimizes to the generic specialization, which
+ * handles every combination of operands, and stays there.
+ *
+ * Specializations are immutable, so a node shared between threads may be
+ * rewritten concurrently without any harm; every state is a valid one.
+ */
+abstract class Specialization {
+
+    enum Operator { ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE }
+
+    final Operator operator;
+
+    private Specialization(Operator operator) {
+        this.operator = operator;
+    }
+
+    abstract Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right);
+
+    static Specialization uninitialized(String operator) {
+        return new Uninitialized(resolve(operator));
+    }
+
+    /**
+     * Evaluates {@code operator} on the operands without a node to specialize,
+     * for builtins combining values on behalf of script code.
+     */
+    static Environment.PlcObject evaluate(String operator, Environment.PlcObject left, Environment.PlcObject right) {
+        return new Generic(resolve(operator)).execute(null, left, right);
+    }
+
+    private static Operator resolve(String operator) {
+        switch (operator) {
+            case "+":  return Operator.ADD;
+            case "-":  return Operator.SUB;
+            case "*":  return Operator.MUL;
+            case "/":  return Operator.DIV;
+            case "==": return Operator.EQ;
+            case "!=": return Operator.NE;
+            case "<":  return Operator.LT;
+            case "<=": return Operator.LE;
+            case ">":  return Operator.GT;
+            case ">=": return Operator.GE;
+            default:   throw new RuntimeException("Unknown operator " + operator);
+        }
+    }
+
+    /**
+     * Replaces this specialization on the node with the generic one and
+     * evaluates the operands with it.
+     */
+    final Environment.PlcObject deoptimize(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+        Specialization generic = new Generic(operator);
+        ast.setSpecialization(generic);
+        return generic.execute(ast, left, right);
+    }
+
+    /* ============================================================
+       Specializations
+       ============================================================ */
+
+    private static final class Uninitialized extends Specialization {
+
+        private Uninitialized(Operator operator) {
+            super(operator);
+        }
+
+        @Override
+        Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+            Object av = left.getValue(), bv = right.getValue();
+            Specialization next;
+            if (operator == Operator.EQ || operator == Operator.NE) {
+                // Equality never inspects the operand types.
+                next = new Generic(operator);
+            } else if (operator == Operator.ADD && (av instanceof String || bv instanceof String)) {
+                next = new Concatenation(operator);
+            } else if (isInteger(left) && isInteger(right)) {
+                next = new IntegerOnly(operator);
+            } else if (av instanceof BigDecimal && bv instanceof BigDecimal) {
+                next = new DecimalOnly(operator);
+            } else {
+                next = new Generic(operator);
+            }
+            ast.setSpecialization(next);
+            return next.execute(ast, left, right);
+        }
+
+    }
+
+    private static final class IntegerOnly extends Specialization {
+
+        private IntegerOnly(Operator operator) {
+            super(operator);
+        }
+
+        @Override
+        Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isSmallInteger() && right.isSmallInteger()) {
+                return integer(operator, left.getSmallInteger(), right.getSmallInteger());
+            }
+            Object av = left.getValue(), bv = right.getValue();
+            if (!(av instanceof BigInteger) || !(bv instanceof BigInteger)) {
+                return deoptimize(ast, left, right);
+            }
+            return integer(operator, (BigInteger) av, (BigInteger) bv);
+        }
+
+    }
+
+    private static final class DecimalOnly extends Specialization {
+
+        private DecimalOnly(Operator operator) {
+            super(operator);
+        }
+
+        @Override
+        Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+            Object av = left.getValue(), bv = right.getValue();
+            if (!(av instanceof BigDecimal) || !(bv instanceof BigDecimal)) {
+                return deoptimize(ast, left, right);
+            }
+            BigDecimal x = (BigDecimal) av, y = (BigDecimal) bv;
+            switch (operator) {
+                case ADD: return Environment.create(x.add(y));
+                case SUB: return Environment.create(x.subtract(y));
+                case MUL: return Environment.create(x.multiply(y));
+                case DIV: return Environment.create(divide(x, y));
+                default:  return Environment.create(compare(operator, x.compareTo(y)));
+            }
+        }
+
+    }
+
+    private static final class Concatenation extends Specialization {
+
+        private Concatenation(Operator operator) {
+            super(operator);
+        }
+
+        @Override
+        Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+            Object av = left.getValue(), bv = right.getValue();
+            if (!(av instanceof String) && !(bv instanceof String)) {
+                return deoptimize(ast, left, right);
+            }
+            return Environment.create(String.valueOf(av) + String.valueOf(bv));
+        }
+
+    }
+
+    /**
+     * Handles every operand combination; this is the behavior the interpreter
+     * had before specialization and the target of every deoptimization.
+     */
+    private static final class Generic extends Specialization {
+
+        private Generic(Operator operator) {
+            super(operator);
+        }
+
+        @Override
+        Environment.PlcObject execute(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isSmallInteger() && right.isSmallInteger()) {
+                long x = left.getSmallInteger(), y = right.getSmallInteger();
+                switch (operator) {
+                    case EQ: return Environment.create(x == y);
+                    case NE: return Environment.create(x != y);
+                    default: return integer(operator, x, y);
+                }
+            }
+            Object av = left.getValue(), bv = right.getValue();
+            switch (operator) {
+                case EQ: return Environment.create(av.equals(bv));
+                case NE: return Environment.create(!av.equals(bv));
+                case ADD:
+                    if (av instanceof String || bv instanceof String) {
+                        return Environment.create(String.valueOf(av) + String.valueOf(bv));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (av instanceof BigDecimal || bv instanceof BigDecimal) {
+                BigDecimal x = (av instanceof BigDecimal)
+                        ? (BigDecimal) av : new BigDecimal((BigInteger) av);
+                BigDecimal y = (bv instanceof BigDecimal)
+                        ? (BigDecimal) bv : new BigDecimal((BigInteger) bv);
+                switch (operator) {
+                    case ADD: return Environment.create(x.add(y));
+                    case SUB: return Environment.create(x.subtract(y));
+                    case MUL: return Environment.create(x.multiply(y));
+                    case DIV: return Environment.create(divide(x, y));
+                    default:  return Environment.create(compare(operator, x.compareTo(y)));
+                }
+            }
+            return integer(operator, (BigInteger) av, (BigInteger) bv);
+        }
+
+    }
+
+    /* ============================================================
+       Shared semantics
+       ============================================================ */
+
+    private static boolean isInteger(Environment.PlcObject object) {
+        return object.isSmallInteger() || object.getValue() instanceof BigInteger;
+    }
+
+    /**
+     * Integer arithmetic on tagged primitives. Anything that would overflow a
+     * {@code long} (or behave differently from {@link BigInteger}, such as
+     * division by zero) is redone with arbitrary precision so results are
+     * identical either way.
+     */
+    private static Environment.PlcObject integer(Operator operator, long x, long y) {
+        try {
+            switch (operator) {
+                case ADD: return Environment.create(Math.addExact(x, y));
+                case SUB: return Environment.create(Math.subtractExact(x, y));
+                case MUL: return Environment.create(Math.multiplyExact(x, y));
+                case DIV:
+                    if (y != 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                        return Environment.create(x / y);
+                    }
+                    break;
+                default:  return Environment.create(compare(operator, Long.compare(x, y)));
+            }
+        } catch (ArithmeticException overflow) {
+            // promoted below
+        }
+        return integer(operator, BigInteger.valueOf(x), BigInteger.valueOf(y));
+    }
+
+    private static Environment.PlcObject integer(Operator operator, BigInteger x, BigInteger y) {
+        switch (operator) {
+            case ADD: return Environment.create(x.add(y));
+            case SUB: return Environment.create(x.subtract(y));
+            case MUL: return Environment.create(x.multiply(y));
+            // Integer division for BigIntegers
+            case DIV: return Environment.create(x.divide(y));
+            default:  return Environment.create(compare(operator, x.compareTo(y)));
+        }
+    }
+
+    private static BigDecimal divide(BigDecimal x, BigDecimal y) {
+        // Divide with 1 decimal of precision, rounding half up
+        return x.divide(y, 1, RoundingMode.HALF_UP).stripTrailingZeros();
+    }
+
+    private static boolean compare(Operator operator, int comparison) {
+        switch (operator) {
+            case LT: return comparison < 0;
+            case LE: return comparison <= 0;
+            case GT: return comparison > 0;
+            case GE: return comparison >= 0;
+            default: throw new RuntimeException("Unknown operator " + operator);
+        }
+    }
+
+}
@@ -0,0 +1,639 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Explicit-stack execution mode for the same language as {@link Interpreter}.
+ *
+ * Method bodies are compiled into a flat instruction list and run by a single
+ * loop, so a script call pushes a heap-allocated {@link Frame} instead of
+ * several Java stack frames. Recursion depth is limited by memory rather than
+ * the thread stack. {@code RETURN f(...)} is a proper tail call: the callee
+ * replaces the caller's frame. Its scope still descends from the caller's,
+ * as with any call, unless its parameters hide every variable the caller
+ * defined, in which case it descends from the scope the caller's did and
+ * the caller's scopes can be dropped as well.
+ *
+ * Java stack is only used again when native code (e.g. a function defined
+ * with {@link Scope#defineFunction}) calls back into a script method.
+ */
+public final class StackInterpreter implements Ast.Visitor<Environment.PlcObject> {
+
+    private Scope scope;
+
+    /**
+     * The scope functions are defined in; every other scope descends from it.
+     */
+    private final Scope globals;
+
+    /**
+     * Script methods defined by this interpreter in order, and their code at
+     * the same index, so calls to them push a frame instead of invoking the
+     * function natively.
+     */
+    private final List<Ast.Method> methods = new ArrayList<>();
+    private final List<Code> codes = new ArrayList<>();
+
+    public StackInterpreter(Scope parent) {
+        scope = new Scope(parent);
+        globals = scope;
+        // Built-in print(x): prints the unwrapped value and returns NIL
+        scope.defineFunction("print", 1, args -> {
+            System.out.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /* ============================================================
+       Visiting top-level structures
+       ============================================================ */
+
+    @Override
+    public Environment.PlcObject visit(Ast.Source ast) {
+        Metrics.StageEvent event = new Metrics.StageEvent("interpret");
+        event.begin();
+        try {
+            for (Ast.Field f : ast.getFields()) visit(f);
+            for (Ast.Method m : ast.getMethods()) visit(m);
+            return scope.lookupFunction("main", 0).invoke(List.of());
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            event.items = ast.getFields().size() + ast.getMethods().size();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Field ast) {
+        Environment.PlcObject value =
+                ast.getValue().isPresent() ? evaluate(ast.getValue().get()) : Environment.NIL;
+        scope.defineVariable(ast.getName(), ast.getConstant(), value);
+        return Environment.NIL;
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Method ast) {
+        Code code = new Compiler(ast.getParameters()).method(ast);
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
+            // entered from native code: run a nested loop for this call only
+            Scope method = new Scope(scope);
+            for (int i = 0; i < args.size(); i++) {
+                method.defineVariable(code.parameters.get(i), false, args.get(i));
+            }
+            return execute(code, method, scope);
+        });
+        methods.add(ast);
+        codes.add(code);
+        return Environment.NIL;
+    }
+
+    /* ============================================================
+       Visiting statements and expressions
+
+       Nodes visited directly are compiled on their own and run in the
+       interpreter's current scope.
+       ============================================================ */
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Expression ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Declaration ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Assignment ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.If ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.For ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.While ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Return ast) {
+        return execute(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expression.Literal ast) {
+        return evaluate(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expression.Group ast) {
+        return evaluate(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expression.Binary ast) {
+        return evaluate(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expression.Access ast) {
+        return evaluate(ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expression.Function ast) {
+        return evaluate(ast);
+    }
+
+    private Environment.PlcObject execute(Ast.Statement ast) {
+        return execute(new Compiler(null).statement(ast), scope, scope);
+    }
+
+    private Environment.PlcObject evaluate(Ast.Expression ast) {
+        return execute(new Compiler(null).expression(ast), scope, scope);
+    }
+
+    /* ============================================================
+       Instructions
+       ============================================================ */
+
+    private enum Op {
+        /** push operand (a PlcObject) */
+        CONST,
+        /** push the value of variable operand */
+        LOAD,
+        /** pop a value and assign it to variable operand */
+        STORE,
+        /** pop a value and declare variable operand in the current scope */
+        DECLARE,
+        /** pop a receiver and push its field operand */
+        GET_FIELD,
+        /** pop a receiver then a value and assign the receiver's field operand */
+        SET_FIELD,
+        /** pop right then left and apply the Binary node operand */
+        BINARY,
+        /** require the top of the stack to be a Boolean */
+        CHECK_BOOLEAN,
+        /** jump to operand */
+        JUMP,
+        /** pop a Boolean and jump to operand if it is false */
+        JUMP_FALSE,
+        /** pop a Boolean and jump to operand if it is true */
+        JUMP_TRUE,
+        /** discard the top of the stack */
+        POP,
+        /** enter a new block scope */
+        ENTER,
+        /** leave the current block scope */
+        EXIT,
+        /** remove the variables of the current block scope, for the next loop iteration */
+        CLEAR,
+        /** pop arguments and call the Function node operand */
+        CALL,
+        /** like CALL, replacing the current frame */
+        TAIL_CALL,
+        /** pop a receiver then arguments and call the Function node operand on it */
+        CALL_METHOD,
+        /** pop a value and return it to the calling frame */
+        RETURN,
+        /** throw a RuntimeException with the operand as message */
+        FAIL
+    }
+
+    private static final class Code {
+
+        private final List<String> parameters;
+        private final Op[] ops;
+        private final Object[] operands;
+
+        private Code(List<String> parameters, Op[] ops, Object[] operands) {
+            this.parameters = parameters;
+            this.ops = ops;
+            this.operands = operands;
+        }
+
+    }
+
+    private static final class Compiler {
+
+        /** parameters of the method being compiled, or null outside of one */
+        private final List<String> parameters;
+        private final List<Op> ops = new ArrayList<>();
+        private final List<Object> operands = new ArrayList<>();
+
+        private Compiler(List<String> parameters) {
+            this.parameters = parameters;
+        }
+
+        private Code method(Ast.Method ast) {
+            for (Ast.Statement s : ast.getStatements()) compile(s);
+            emit(Op.CONST, Environment.NIL);
+            emit(Op.RETURN, null);
+            return build();
+        }
+
+        private Code statement(Ast.Statement ast) {
+            compile(ast);
+            emit(Op.CONST, Environment.NIL);
+            emit(Op.RETURN, null);
+            return build();
+        }
+
+        private Code expression(Ast.Expression ast) {
+            compile(ast);
+            emit(Op.RETURN, null);
+            return build();
+        }
+
+        private Code build() {
+            return new Code(parameters, ops.toArray(new Op[0]), operands.toArray());
+        }
+
+        private int emit(Op op, Object operand) {
+            ops.add(op);
+            operands.add(operand);
+            return ops.size() - 1;
+        }
+
+        /** points the jump at {@code index} to the next instruction */
+        private void patch(int index) {
+            operands.set(index, ops.size());
+        }
+
+        private void block(List<Ast.Statement> statements) {
+            // blocks without declarations run in the enclosing scope
+            boolean declares = declares(statements);
+            if (declares) emit(Op.ENTER, null);
+            for (Ast.Statement s : statements) compile(s);
+            if (declares) emit(Op.EXIT, null);
+        }
+
+        private static boolean declares(List<Ast.Statement> statements) {
+            for (Ast.Statement s : statements) {
+                if (s instanceof Ast.Statement.Declaration) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Compiles a loop whose body runs in one scope entered before it and
+         * cleared after every iteration, so the condition and increment see
+         * only the enclosing scope's variables, as in {@link Interpreter}.
+         */
+        private void loop(Ast.Expression condition, List<Ast.Statement> statements, Ast.Statement increment) {
+            boolean declares = declares(statements);
+            if (declares) emit(Op.ENTER, null);
+            int start = ops.size();
+            compile(condition);
+            int exit = emit(Op.JUMP_FALSE, null);
+            for (Ast.Statement s : statements) compile(s);
+            if (declares) emit(Op.CLEAR, null);
+            if (increment != null) {
+                compile(increment);
+            }
+            emit(Op.JUMP, start);
+            patch(exit);
+            if (declares) emit(Op.EXIT, null);
+        }
+
+        private void compile(Ast.Statement ast) {
+            if (ast instanceof Ast.Statement.Expression) {
+                compile(((Ast.Statement.Expression) ast).getExpression());
+                emit(Op.POP, null);
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                if (declaration.getValue().isPresent()) {
+                    compile(declaration.getValue().get());
+                } else {
+                    emit(Op.CONST, Environment.NIL);
+                }
+                emit(Op.DECLARE, declaration.getName());
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+                if (!(assignment.getReceiver() instanceof Ast.Expression.Access)) {
+                    emit(Op.FAIL, "Invalid assignment target.");
+                    return;
+                }
+                Ast.Expression.Access access = (Ast.Expression.Access) assignment.getReceiver();
+                compile(assignment.getValue());
+                if (access.getReceiver().isPresent()) {
+                    compile(access.getReceiver().get());
+                    emit(Op.SET_FIELD, access.getName());
+                } else {
+                    emit(Op.STORE, access.getName());
+                }
+            } else if (ast instanceof Ast.Statement.If) {
+                Ast.Statement.If branch = (Ast.Statement.If) ast;
+                compile(branch.getCondition());
+                int otherwise = emit(Op.JUMP_FALSE, null);
+                block(branch.getThenStatements());
+                int end = emit(Op.JUMP, null);
+                patch(otherwise);
+                block(branch.getElseStatements());
+                patch(end);
+            } else if (ast instanceof Ast.Statement.For) {
+                Ast.Statement.For loop = (Ast.Statement.For) ast;
+                if (loop.getInitialization() != null) {
+                    compile(loop.getInitialization());
+                }
+                loop(loop.getCondition(), loop.getStatements(), loop.getIncrement());
+            } else if (ast instanceof Ast.Statement.While) {
+                Ast.Statement.While loop = (Ast.Statement.While) ast;
+                loop(loop.getCondition(), loop.getStatements(), null);
+            } else if (ast instanceof Ast.Statement.Return) {
+                Ast.Expression value = ((Ast.Statement.Return) ast).getValue();
+                if (parameters == null) {
+                    emit(Op.FAIL, "Return outside of a method.");
+                } else if (value instanceof Ast.Expression.Function
+                        && !((Ast.Expression.Function) value).getReceiver().isPresent()) {
+                    for (Ast.Expression argument : ((Ast.Expression.Function) value).getArguments()) {
+                        compile(argument);
+                    }
+                    emit(Op.TAIL_CALL, value);
+                } else {
+                    compile(value);
+                    emit(Op.RETURN, null);
+                }
+            } else {
+                throw new RuntimeException("Unknown statement type: " + ast.getClass().getName());
+            }
+        }
+
+        private void compile(Ast.Expression ast) {
+            if (ast instanceof Ast.Expression.Literal) {
+                Object literal = ((Ast.Expression.Literal) ast).getLiteral();
+                emit(Op.CONST, literal == null ? Environment.NIL : Environment.create(literal));
+            } else if (ast instanceof Ast.Expression.Group) {
+                compile(((Ast.Expression.Group) ast).getExpression());
+            } else if (ast instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                String op = binary.getOperator();
+                compile(binary.getLeft());
+                if ("&&".equals(op) || "AND".equalsIgnoreCase(op)) {
+                    int shortCircuit = emit(Op.JUMP_FALSE, null);
+                    compile(binary.getRight());
+                    emit(Op.CHECK_BOOLEAN, null);
+                    int end = emit(Op.JUMP, null);
+                    patch(shortCircuit);
+                    emit(Op.CONST, Environment.FALSE);
+                    patch(end);
+                } else if ("||".equals(op) || "OR".equalsIgnoreCase(op)) {
+                    int shortCircuit = emit(Op.JUMP_TRUE, null);
+                    compile(binary.getRight());
+                    emit(Op.CHECK_BOOLEAN, null);
+                    int end = emit(Op.JUMP, null);
+                    patch(shortCircuit);
+                    emit(Op.CONST, Environment.TRUE);
+                    patch(end);
+                } else {
+                    compile(binary.getRight());
+                    emit(Op.BINARY, binary);
+                }
+            } else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                if (access.getReceiver().isPresent()) {
+                    compile(access.getReceiver().get());
+                    emit(Op.GET_FIELD, access.getName());
+                } else {
+                    emit(Op.LOAD, access.getName());
+                }
+            } else if (ast instanceof Ast.Expression.Function) {
+                Ast.Expression.Function function = (Ast.Expression.Function) ast;
+                for (Ast.Expression argument : function.getArguments()) {
+                    compile(argument);
+                }
+                if (function.getReceiver().isPresent()) {
+                    compile(function.getReceiver().get());
+                    emit(Op.CALL_METHOD, function);
+                } else {
+                    emit(Op.CALL, function);
+                }
+            } else {
+                throw new RuntimeException("Unknown expression type: " + ast.getClass().getName());
+            }
+        }
+
+    }
+
+    /* ============================================================
+       Execution
+       ============================================================ */
+
+    private static final class Frame {
+
+        private final Code code;
+        private final Frame caller;
+        /** scope the method's own scope was created in; tail calls may reuse it */
+        private final Scope base;
+        private Scope scope;
+        private int pc = 0;
+
+        private Frame(Code code, Frame caller, Scope scope, Scope base) {
+            this.code = code;
+            this.caller = caller;
+            this.scope = scope;
+            this.base = base;
+        }
+
+    }
+
+    private Environment.PlcObject[] stack = new Environment.PlcObject[64];
+    private int sp = 0;
+
+    private void push(Environment.PlcObject value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private Environment.PlcObject pop() {
+        Environment.PlcObject value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private static boolean requireBoolean(Environment.PlcObject value) {
+        if (value.getValue() instanceof Boolean) {
+            return (Boolean) value.getValue();
+        }
+        throw new RuntimeException("Expected " + Boolean.class.getName() +
+                " but got " + value.getValue().getClass().getName());
+    }
+
+    /**
+     * Runs {@code code} in {@code frameScope} until its frame returns,
+     * pushing and popping frames for script calls along the way.
+     */
+    private Environment.PlcObject execute(Code code, Scope frameScope, Scope base) {
+        int entry = sp;
+        Scope saved = scope;
+        Frame frame = new Frame(code, null, frameScope, base);
+        try {
+            while (true) {
+                Op op = frame.code.ops[frame.pc];
+                Object operand = frame.code.operands[frame.pc];
+                frame.pc++;
+                switch (op) {
+                    case CONST:
+                        push((Environment.PlcObject) operand);
+                        break;
+                    case LOAD:
+                        push(frame.scope.lookupVariable((String) operand).getValue());
+                        break;
+                    case STORE: {
+                        Environment.Variable variable = frame.scope.lookupVariable((String) operand);
+                        if (variable.getConstant()) {
+                            throw new RuntimeException("Cannot assign to constant: " + operand);
+                        }
+                        variable.setValue(pop());
+                        break;
+                    }
+                    case DECLARE:
+                        frame.scope.defineVariable((String) operand, false, pop());
+                        break;
+                    case GET_FIELD:
+                        push(pop().getField((String) operand).getValue());
+                        break;
+                    case SET_FIELD: {
+                        Environment.PlcObject receiver = pop();
+                        receiver.setField((String) operand, pop());
+                        break;
+                    }
+                    case BINARY: {
+                        Ast.Expression.Binary binary = (Ast.Expression.Binary) operand;
+                        Environment.PlcObject right = pop();
+                        Environment.PlcObject left = pop();
+                        push(binary.getSpecialization().execute(binary, left, right));
+                        break;
+                    }
+                    case CHECK_BOOLEAN:
+                        requireBoolean(stack[sp - 1]);
+                        break;
+                    case JUMP:
+                        frame.pc = (Integer) operand;
+                        break;
+                    case JUMP_FALSE:
+                        if (!requireBoolean(pop())) {
+                            frame.pc = (Integer) operand;
+                        }
+                        break;
+                    case JUMP_TRUE:
+                        if (requireBoolean(pop())) {
+                            frame.pc = (Integer) operand;
+                        }
+                        break;
+                    case POP:
+                        pop();
+                        break;
+                    case ENTER:
+                        frame.scope = new Scope(frame.scope);
+                        break;
+                    case EXIT:
+                        frame.scope = frame.scope.getParent();
+                        break;
+                    case CLEAR:
+                        frame.scope.clear();
+                        break;
+                    case CALL:
+                    case TAIL_CALL: {
+                        Metrics.INVOCATIONS.increment();
+                        Ast.Expression.Function call = (Ast.Expression.Function) operand;
+                        int arity = call.getArguments().size();
+                        int index = call.getCache().lookupScript(methods, call.getName(), arity);
+                        if (index < 0) {
+                            Environment.Function function =
+                                    call.getCache().lookupFunction(globals, frame.scope, call.getName(), arity);
+                            push(function.invoke(arguments(arity, frame.scope)));
+                            if (op == Op.TAIL_CALL) {
+                                frame = frame.caller;
+                                if (frame == null) {
+                                    return pop();
+                                }
+                            }
+                            break;
+                        }
+                        // a tail call skips the caller's scopes if nothing in them stays visible
+                        Code callee = codes.get(index);
+                        Scope parent = op == Op.TAIL_CALL && frame.scope.definesOnly(callee.parameters, frame.base)
+                                ? frame.base : frame.scope;
+                        Scope method = new Scope(parent);
+                        for (int i = 0; i < arity; i++) {
+                            method.defineVariable(callee.parameters.get(i), false, stack[sp - arity + i]);
+                        }
+                        for (int i = 0; i < arity; i++) {
+                            pop();
+                        }
+                        frame = new Frame(callee, op == Op.TAIL_CALL ? frame.caller : frame, method, parent);
+                        break;
+                    }
+                    case CALL_METHOD: {
+                        Metrics.INVOCATIONS.increment();
+                        Ast.Expression.Function call = (Ast.Expression.Function) operand;
+                        int arity = call.getArguments().size();
+                        Environment.PlcObject receiver = pop();
+                        Environment.Function method =
+                                call.getCache().lookupMethod(receiver.getScope(), call.getName(), arity + 1);
+                        push(receiver.callMethod(method, arguments(arity, frame.scope)));
+                        break;
+                    }
+                    case RETURN:
+                        // the return value stays on the stack for the caller
+                        frame = frame.caller;
+                        if (frame == null) {
+                            return pop();
+                        }
+                        break;
+                    case FAIL:
+                        throw new RuntimeException((String) operand);
+                    default:
+                        throw new AssertionError(op);
+                }
+            }
+        } finally {
+            // an exception leaves operands behind, drop them
+            while (sp > entry) {
+                pop();
+            }
+            scope = saved;
+        }
+    }
+
+    /**
+     * Pops the top {@code arity} operands as the arguments of a call into
+     * native code. The current scope is exposed to it so a native function
+     * calling back into a script method sees the same scope chain as the
+     * tree-walking {@link Interpreter} would give it.
+     */
+    private List<Environment.PlcObject> arguments(int arity, Scope current) {
+        List<Environment.PlcObject> args = new ArrayList<>(arity);
+        for (int i = sp - arity; i < sp; i++) {
+            args.add(stack[i]);
+        }
+        for (int i = 0; i < arity; i++) {
+            pop();
+        }
+        scope = current;
+        return args;
+    }
+
+}
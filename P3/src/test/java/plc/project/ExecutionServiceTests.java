@@ -0,0 +1,91 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+final class ExecutionServiceTests {
+
+    /**
+     * LET count = 0;
+     * DEF main() DO
+     *     WHILE count < 1000 DO count = count + 1; END
+     *     RETURN count;
+     * END
+     *
+     * Every run shares the same tree but must see only its own field.
+     */
+    @Test
+    void testSharedSourceIsolation() {
+        Ast.Expression.Access count = new Ast.Expression.Access(Optional.empty(), "count");
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Field("count", false, Optional.of(new Ast.Expression.Literal(BigInteger.ZERO)))),
+                Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                        new Ast.Statement.While(
+                                new Ast.Expression.Binary("<", count, new Ast.Expression.Literal(BigInteger.valueOf(1000))),
+                                Arrays.asList(new Ast.Statement.Assignment(count,
+                                        new Ast.Expression.Binary("+", count, new Ast.Expression.Literal(BigInteger.ONE))))
+                        ),
+                        new Ast.Statement.Return(count)
+                )))
+        );
+        try (ExecutionService service = new ExecutionService()) {
+            List<CompletableFuture<Environment.PlcObject>> results =
+                    service.submitAll(new ArrayList<>(Collections.nCopies(64, source)));
+            for (CompletableFuture<Environment.PlcObject> result : results) {
+                Assertions.assertEquals(BigInteger.valueOf(1000), result.join().getValue());
+            }
+        }
+    }
+
+    /**
+     * DEF square(x) DO RETURN x * x; END
+     * DEF work(i) DO square(i); END
+     * DEF main() DO parallelFor(0, 1000, "work"); RETURN square(3); END
+     *
+     * Every run and every fork defines its own functions, but the calls to
+     * square still hit the caches on the shared tree.
+     */
+    @Test
+    void testSharedSourceCallCache() {
+        Ast.Expression.Access x = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Method("square", Arrays.asList("x"), Arrays.asList(
+                        new Ast.Statement.Return(new Ast.Expression.Binary("*", x, x))
+                )),
+                new Ast.Method("work", Arrays.asList("i"), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "square",
+                                Arrays.asList(new Ast.Expression.Access(Optional.empty(), "i"))))
+                )),
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "parallelFor", Arrays.asList(
+                                new Ast.Expression.Literal(BigInteger.ZERO),
+                                new Ast.Expression.Literal(BigInteger.valueOf(1000)),
+                                new Ast.Expression.Literal("work")
+                        ))),
+                        new Ast.Statement.Return(new Ast.Expression.Function(Optional.empty(), "square",
+                                Arrays.asList(new Ast.Expression.Literal(BigInteger.valueOf(3)))))
+                ))
+        ));
+        try (ExecutionService service = new ExecutionService()) {
+            Assertions.assertEquals(BigInteger.valueOf(9), service.submit(source).join().getValue());
+            long misses = Metrics.getCacheMisses();
+            List<CompletableFuture<Environment.PlcObject>> results =
+                    service.submitAll(new ArrayList<>(Collections.nCopies(16, source)));
+            for (CompletableFuture<Environment.PlcObject> result : results) {
+                Assertions.assertEquals(BigInteger.valueOf(9), result.join().getValue());
+            }
+            // Only the call to the native parallelFor is resolved again in
+            // each run, once as a script method and once as a function.
+            Assertions.assertEquals(2 * 16, Metrics.getCacheMisses() - misses);
+        }
+    }
+
+}
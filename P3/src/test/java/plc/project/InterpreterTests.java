@@ -10,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -85,6 +86,19 @@ final class InterpreterTests {
                         )),
                         Arrays.asList(Environment.create(BigInteger.TEN)),
                         BigInteger.valueOf(100)
+                ),
+                Arguments.of("Return From Loop",
+                        new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.While(new Ast.Expression.Literal(true), Arrays.asList(
+                                        new Ast.Statement.If(new Ast.Expression.Literal(true),
+                                                Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))),
+                                                Arrays.asList()
+                                        )
+                                )),
+                                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.TEN))
+                        )),
+                        Arrays.asList(),
+                        BigInteger.ONE
                 )
         );
     }
@@ -240,6 +254,29 @@ final class InterpreterTests {
         Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
     }
 
+    @Test
+    void testWhileDeclarationStatement() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", false, Environment.create(BigInteger.ZERO));
+        test(new Ast.Statement.While(
+                new Ast.Expression.Binary("<",
+                        new Ast.Expression.Access(Optional.empty(),"num"),
+                        new Ast.Expression.Literal(BigInteger.TEN)
+                ),
+                Arrays.asList(
+                        new Ast.Statement.Declaration("next", Optional.of(new Ast.Expression.Binary("+",
+                                new Ast.Expression.Access(Optional.empty(),"num"),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        ))),
+                        new Ast.Statement.Assignment(
+                                new Ast.Expression.Access(Optional.empty(),"num"),
+                                new Ast.Expression.Access(Optional.empty(),"next")
+                        )
+                )
+        ),Environment.NIL.getValue(), scope);
+        Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testLiteralExpression(String test, Ast ast, Object expected) {
@@ -339,10 +376,46 @@ final class InterpreterTests {
                                 new Ast.Expression.Literal(new BigDecimal("3.4"))
                         ),
                         new BigDecimal("0.4")
+                ),
+                Arguments.of("Addition Overflow",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Literal(BigInteger.valueOf(Long.MAX_VALUE)),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        ),
+                        BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)
+                ),
+                Arguments.of("Multiplication Overflow",
+                        new Ast.Expression.Binary("*",
+                                new Ast.Expression.Literal(BigInteger.valueOf(Long.MIN_VALUE)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(-1))
+                        ),
+                        BigInteger.valueOf(Long.MIN_VALUE).negate()
+                ),
+                Arguments.of("Integer Division",
+                        new Ast.Expression.Binary("/",
+                                new Ast.Expression.Literal(BigInteger.valueOf(-7)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(2))
+                        ),
+                        BigInteger.valueOf(-3)
                 )
         );
     }
 
+    @Test
+    void testBinarySpecializationDeoptimizes() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("x", false, Environment.create(BigInteger.ONE));
+        Ast.Expression.Binary ast = new Ast.Expression.Binary("+",
+                new Ast.Expression.Access(Optional.empty(), "x"),
+                new Ast.Expression.Access(Optional.empty(), "x")
+        );
+        test(ast, BigInteger.valueOf(2), scope);
+        scope.lookupVariable("x").setValue(Environment.create(new BigDecimal("1.5")));
+        test(ast, new BigDecimal("3.0"), scope);
+        scope.lookupVariable("x").setValue(Environment.create("x"));
+        test(ast, "xx", scope);
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, Ast ast, Object expected) {
@@ -395,6 +468,169 @@ final class InterpreterTests {
         );
     }
 
+    @Test
+    void testFunctionCallSiteCache() {
+        Ast.Expression.Function function = new Ast.Expression.Function(Optional.empty(), "function", Arrays.asList());
+        Ast.Expression.Function method = new Ast.Expression.Function(
+                Optional.of(new Ast.Expression.Access(Optional.empty(), "object")), "method", Arrays.asList());
+        for (String name : Arrays.asList("first", "second")) {
+            Scope scope = new Scope(null);
+            scope.defineFunction("function", 0, args -> Environment.create(name));
+            Scope object = new Scope(null);
+            object.defineFunction("method", 1, args -> Environment.create(name + ".method"));
+            scope.defineVariable("object", false, new Environment.PlcObject(object, "object"));
+            test(function, name, scope);
+            test(method, name + ".method", scope);
+        }
+
+        // A definition shadowing the cached function invalidates it.
+        Scope parent = new Scope(null);
+        parent.defineFunction("function", 0, args -> Environment.create("parent"));
+        Interpreter interpreter = new Interpreter(parent);
+        Assertions.assertEquals("parent", interpreter.visit(function).getValue());
+        interpreter.getScope().defineFunction("function", 0, args -> Environment.create("shadowed"));
+        Assertions.assertEquals("shadowed", interpreter.visit(function).getValue());
+    }
+
+    /**
+     * DEF square(x) DO RETURN x * x; END
+     * DEF main() DO RETURN parallelSum(1, 1001, "square"); END
+     *
+     * Also maps square over a host list with parallelMap.
+     */
+    @Test
+    void testParallelBuiltins() {
+        Ast.Expression.Access x = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Method square = new Ast.Method("square", Arrays.asList("x"), Arrays.asList(
+                new Ast.Statement.Return(new Ast.Expression.Binary("*", x, x))
+        ));
+        Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Return(new Ast.Expression.Function(Optional.empty(), "parallelSum", Arrays.asList(
+                        new Ast.Expression.Literal(BigInteger.ONE),
+                        new Ast.Expression.Literal(BigInteger.valueOf(1001)),
+                        new Ast.Expression.Literal("square")
+                )))
+        ));
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(333_833_500),
+                interpreter.visit(new Ast.Source(Arrays.asList(), Arrays.asList(square, main))).getValue());
+        interpreter.getScope().defineVariable("list", false, Environment.create(Arrays.asList(
+                BigInteger.ONE, BigInteger.valueOf(2), new BigDecimal("1.5"))));
+        Ast.Expression.Function map = new Ast.Expression.Function(Optional.empty(), "parallelMap", Arrays.asList(
+                new Ast.Expression.Access(Optional.empty(), "list"),
+                new Ast.Expression.Literal("square")
+        ));
+        Assertions.assertEquals(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(4), new BigDecimal("2.25")),
+                interpreter.visit(map).getValue());
+    }
+
+    /**
+     * VAR total = 0;
+     * DEF add(i) DO total = total + i; END
+     * DEF main() DO parallelFor(0, 10, "add"); RETURN total; END
+     */
+    @Test
+    void testParallelFieldAssignment() {
+        Ast.Expression.Access total = new Ast.Expression.Access(Optional.empty(), "total");
+        Ast.Method add = new Ast.Method("add", Arrays.asList("i"), Arrays.asList(
+                new Ast.Statement.Assignment(total, new Ast.Expression.Binary("+", total, new Ast.Expression.Access(Optional.empty(), "i")))
+        ));
+        Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "parallelFor", Arrays.asList(
+                        new Ast.Expression.Literal(BigInteger.ZERO),
+                        new Ast.Expression.Literal(BigInteger.TEN),
+                        new Ast.Expression.Literal("add")
+                ))),
+                new Ast.Statement.Return(total)
+        ));
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Field("total", false, Optional.of(new Ast.Expression.Literal(BigInteger.ZERO)))),
+                Arrays.asList(add, main));
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                () -> new Interpreter(new Scope(null)).visit(source));
+        // The pool may rethrow it wrapped.
+        Assertions.assertTrue(e.getMessage().contains("Cannot assign to field in a parallel callback: total"), e.getMessage());
+    }
+
+    /**
+     * WHILE TRUE DO count = count + 1; END
+     */
+    @Test
+    void testStepLimit() {
+        Ast.Statement.While loop = infiniteLoop();
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.getScope().defineVariable("count", false, Environment.create(BigInteger.ZERO));
+        interpreter.setStepLimit(5000);
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(loop));
+        Assertions.assertEquals(BigInteger.valueOf(5000), interpreter.getScope().lookupVariable("count").getValue().getValue());
+    }
+
+    /**
+     * DEF spin(i) DO
+     *     LET n = 0;
+     *     WHILE n < 500 DO n = n + 1; END
+     * END
+     * DEF main() DO parallelFor(0, 100, "spin"); RETURN 0; END
+     *
+     * No single fork exceeds the limit, but all of them together do.
+     */
+    @Test
+    void testParallelStepLimit() {
+        Ast.Expression.Access n = new Ast.Expression.Access(Optional.empty(), "n");
+        Ast.Method spin = new Ast.Method("spin", Arrays.asList("i"), Arrays.asList(
+                new Ast.Statement.Declaration("n", Optional.of(new Ast.Expression.Literal(BigInteger.ZERO))),
+                new Ast.Statement.While(new Ast.Expression.Binary("<", n, new Ast.Expression.Literal(BigInteger.valueOf(500))), Arrays.asList(
+                        new Ast.Statement.Assignment(n, new Ast.Expression.Binary("+", n, new Ast.Expression.Literal(BigInteger.ONE)))
+                ))
+        ));
+        Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "parallelFor", Arrays.asList(
+                        new Ast.Expression.Literal(BigInteger.ZERO),
+                        new Ast.Expression.Literal(BigInteger.valueOf(100)),
+                        new Ast.Expression.Literal("spin")
+                ))),
+                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ZERO))
+        ));
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setStepLimit(10_000);
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                () -> interpreter.visit(new Ast.Source(Arrays.asList(), Arrays.asList(spin, main))));
+        // The pool may rethrow it wrapped.
+        Assertions.assertTrue(e.getMessage().contains("Step limit exceeded."), e.getMessage());
+    }
+
+    @Test
+    void testCancellation() throws InterruptedException {
+        Ast.Statement.While loop = infiniteLoop();
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.getScope().defineVariable("count", false, Environment.create(BigInteger.ZERO));
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            interpreter.cancel();
+        });
+        canceller.start();
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(loop));
+        Assertions.assertEquals("Execution cancelled.", e.getMessage());
+        canceller.join();
+
+        Interpreter timed = new Interpreter(new Scope(null));
+        timed.getScope().defineVariable("count", false, Environment.create(BigInteger.ZERO));
+        timed.setDeadline(Duration.ofMillis(50));
+        e = Assertions.assertThrows(RuntimeException.class, () -> timed.visit(loop));
+        Assertions.assertEquals("Deadline exceeded.", e.getMessage());
+    }
+
+    private static Ast.Statement.While infiniteLoop() {
+        Ast.Expression.Access count = new Ast.Expression.Access(Optional.empty(), "count");
+        return new Ast.Statement.While(new Ast.Expression.Literal(true), Arrays.asList(
+                new Ast.Statement.Assignment(count,
+                        new Ast.Expression.Binary("+", count, new Ast.Expression.Literal(BigInteger.ONE)))
+        ));
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
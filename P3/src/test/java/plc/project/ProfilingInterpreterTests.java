@@ -0,0 +1,67 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+final class ProfilingInterpreterTests {
+
+    /**
+     * DEF square(x) DO RETURN x * x; END
+     * DEF main() DO
+     *     LET total = 0;
+     *     FOR (LET i = 0; i < 10; i = i + 1) total = total + square(i); END
+     *     RETURN total;
+     * END
+     */
+    @Test
+    void testProfile() {
+        Ast.Expression.Access x = access("x"), i = access("i"), total = access("total");
+        Ast.Method square = new Ast.Method("square", Arrays.asList("x"), Arrays.asList(
+                new Ast.Statement.Return(new Ast.Expression.Binary("*", x, x))
+        ));
+        Ast.Statement.Assignment body = new Ast.Statement.Assignment(total, new Ast.Expression.Binary("+", total,
+                new Ast.Expression.Function(Optional.empty(), "square", Arrays.asList(i))));
+        Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Declaration("total", Optional.of(literal(0))),
+                new Ast.Statement.For(
+                        new Ast.Statement.Declaration("i", Optional.of(literal(0))),
+                        new Ast.Expression.Binary("<", i, literal(10)),
+                        new Ast.Statement.Assignment(i, new Ast.Expression.Binary("+", i, literal(1))),
+                        Arrays.asList(body)
+                ),
+                new Ast.Statement.Return(total)
+        ));
+        ProfilingInterpreter interpreter = new ProfilingInterpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(285),
+                interpreter.visit(new Ast.Source(Arrays.asList(), Arrays.asList(square, main))).getValue());
+
+        Assertions.assertEquals(10, interpreter.getCount(body));
+        Assertions.assertEquals(10, interpreter.getCount(square.getStatements().get(0)));
+        Assertions.assertTrue(interpreter.getNanos(main.getStatements().get(1)) >= interpreter.getNanos(body));
+
+        List<String> lines = Arrays.asList(interpreter.getCollapsedStacks().split("\n"));
+        Assertions.assertEquals(2, lines.size());
+        Assertions.assertTrue(lines.get(0).matches("main;square \\d+"), lines.get(0));
+        Assertions.assertTrue(lines.get(1).matches("main \\d+"), lines.get(1));
+
+        List<ProfilingInterpreter.MethodProfile> hot = interpreter.getHotMethods(5);
+        Assertions.assertEquals(2, hot.size());
+        ProfilingInterpreter.MethodProfile profile = hot.get(0).getMethod() == square ? hot.get(0) : hot.get(1);
+        Assertions.assertEquals(10, profile.getCalls());
+        Assertions.assertEquals(1, interpreter.getHotMethods(1).size());
+    }
+
+    private static Ast.Expression.Literal literal(long value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+}
@@ -0,0 +1,121 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+
+final class StackInterpreterTests {
+
+    /**
+     * DEF sum(n) DO
+     *     IF n == 0 DO RETURN 0; END
+     *     RETURN n + sum(n - 1);
+     * END
+     */
+    @Test
+    void testDeepRecursion() {
+        Ast.Method sum = new Ast.Method("sum", Arrays.asList("n"), Arrays.asList(
+                new Ast.Statement.If(
+                        new Ast.Expression.Binary("==", access("n"), literal(0)),
+                        Arrays.asList(new Ast.Statement.Return(literal(0))),
+                        Arrays.asList()
+                ),
+                new Ast.Statement.Return(new Ast.Expression.Binary("+",
+                        access("n"),
+                        call("sum", new Ast.Expression.Binary("-", access("n"), literal(1)))
+                ))
+        ));
+        int depth = 100_000;
+        test(sum, call("sum", literal(depth)),
+                BigInteger.valueOf(depth).multiply(BigInteger.valueOf(depth + 1)).shiftRight(1));
+    }
+
+    /**
+     * DEF loop(n, acc) DO
+     *     IF n == 0 DO RETURN acc; END
+     *     RETURN loop(n - 1, acc + 1);
+     * END
+     */
+    @Test
+    void testTailCall() {
+        Ast.Method loop = new Ast.Method("loop", Arrays.asList("n", "acc"), Arrays.asList(
+                new Ast.Statement.If(
+                        new Ast.Expression.Binary("==", access("n"), literal(0)),
+                        Arrays.asList(new Ast.Statement.Return(access("acc"))),
+                        Arrays.asList()
+                ),
+                new Ast.Statement.Return(call("loop",
+                        new Ast.Expression.Binary("-", access("n"), literal(1)),
+                        new Ast.Expression.Binary("+", access("acc"), literal(1))
+                ))
+        ));
+        test(loop, call("loop", literal(1_000_000), literal(0)), BigInteger.valueOf(1_000_000));
+    }
+
+    /**
+     * DEF inner() DO RETURN secret; END
+     * DEF outer() DO LET secret = 1; RETURN inner(); END
+     * DEF main() DO RETURN outer(); END
+     *
+     * Variables are resolved dynamically, so inner sees outer's local even
+     * though it is reached by a tail call, as it does in Interpreter.
+     */
+    @Test
+    void testTailCallScope() {
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Method("inner", Arrays.asList(), Arrays.asList(new Ast.Statement.Return(access("secret")))),
+                new Ast.Method("outer", Arrays.asList(), Arrays.asList(
+                        new Ast.Statement.Declaration("secret", Optional.of(literal(1))),
+                        new Ast.Statement.Return(call("inner"))
+                )),
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(new Ast.Statement.Return(call("outer"))))
+        ));
+        Object expected = new Interpreter(new Scope(null)).visit(source).getValue();
+        Assertions.assertEquals(BigInteger.ONE, expected);
+        Assertions.assertEquals(expected, new StackInterpreter(new Scope(null)).visit(source).getValue());
+    }
+
+    /**
+     * WHILE i < 100 DO LET x = i + 1; i = x; END
+     *
+     * The body's scope is allocated once and cleared between iterations.
+     */
+    @Test
+    void testLoopScope() {
+        StackInterpreter interpreter = new StackInterpreter(new Scope(null));
+        interpreter.getScope().defineVariable("i", false, Environment.create(BigInteger.ZERO));
+        Ast.Statement.While loop = new Ast.Statement.While(new Ast.Expression.Binary("<", access("i"), literal(100)), Arrays.asList(
+                new Ast.Statement.Declaration("x", Optional.of(new Ast.Expression.Binary("+", access("i"), literal(1)))),
+                new Ast.Statement.Assignment(access("i"), access("x"))
+        ));
+        long scopes = Metrics.getScopes();
+        interpreter.visit(loop);
+        Assertions.assertEquals(1, Metrics.getScopes() - scopes);
+        Assertions.assertEquals(BigInteger.valueOf(100), interpreter.getScope().lookupVariable("i").getValue().getValue());
+    }
+
+    private static void test(Ast.Method method, Ast.Expression.Function call, Object expected) {
+        StackInterpreter interpreter = new StackInterpreter(new Scope(null));
+        interpreter.visit(new Ast.Source(Arrays.asList(), Arrays.asList(
+                method,
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(new Ast.Statement.Return(call)))
+        )));
+        Assertions.assertEquals(expected, interpreter.visit(call).getValue());
+    }
+
+    private static Ast.Expression.Literal literal(long value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Expression.Function call(String name, Ast.Expression... arguments) {
+        return new Ast.Expression.Function(Optional.empty(), name, Arrays.asList(arguments));
+    }
+
+}
@@ -4,11 +4,21 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Semantic analyzer: decorates/binds names and types, and throws RuntimeException
  * when semantic constraints are violated (as described in the assignment).
+ *
+ * Alternatively, it can collect every problem as a {@link Diagnostic} (see
+ * {@link #setCollecting}): the node at fault gets {@link Environment.Type#ERROR}
+ * and analysis continues.
  */
 public final class Analyzer implements Ast.Visitor<Void> {
 
@@ -22,6 +32,28 @@ public final class Analyzer implements Ast.Visitor<Void> {
      */
     private Ast.Method currentMethod = null;
 
+    /**
+     * Whether method bodies are analyzed in parallel (see {@link #setParallel}).
+     */
+    private boolean parallel = false;
+
+    /**
+     * Diagnostics collected so far, or null if errors are thrown.
+     */
+    private List<Diagnostic> diagnostics = null;
+
+    /**
+     * Return types inferred for methods declaring none, or null if methods
+     * without a return type return Any (see {@link #setInferring}).
+     */
+    private Map<Ast.Method, Environment.Type> inferred = null;
+
+    /**
+     * The join of the types returned so far by the method being analyzed,
+     * while inferring its return type.
+     */
+    private Environment.Type returned = null;
+
     public Analyzer(Scope parent) {
         this.scope = new Scope(parent);
 
@@ -33,12 +65,85 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 Environment.Type.NIL,
                 args -> Environment.NIL
         );
+
+        // Parallel builtins provided by the interpreter. Callbacks are named
+        // by a String, so their types can only be checked when called.
+        scope.defineFunction(
+                "parallelFor",
+                "parallelFor",
+                Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER, Environment.Type.STRING),
+                Environment.Type.NIL,
+                args -> Environment.NIL
+        );
+        scope.defineFunction(
+                "parallelSum",
+                "parallelSum",
+                Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER, Environment.Type.STRING),
+                Environment.Type.ANY,
+                args -> Environment.NIL
+        );
+        scope.defineFunction(
+                "parallelMap",
+                "parallelMap",
+                Arrays.asList(Environment.Type.ANY, Environment.Type.STRING),
+                Environment.Type.ANY,
+                args -> Environment.NIL
+        );
+    }
+
+    /**
+     * Creates a worker analyzing method bodies in the global scope of
+     * {@code parent}, which it only reads.
+     */
+    private Analyzer(Analyzer parent) {
+        this.scope = parent.scope;
+        this.diagnostics = parent.diagnostics == null ? null : new ArrayList<>();
     }
 
     public Scope getScope() {
         return scope;
     }
 
+    /**
+     * Analyzes the bodies of a source's methods in parallel, each in its own
+     * worker on the common fork-join pool. Bodies only read the global scope
+     * once fields and method signatures are defined, and decorate disjoint
+     * parts of the tree. If several methods fail, the exception thrown is the
+     * one from the first in the source, as when analyzing sequentially.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Records semantic errors as diagnostics instead of throwing them, so a
+     * whole source can be checked at once. A statement failing in a way
+     * not handled more precisely is reported as a whole, and skipped.
+     */
+    public void setCollecting(boolean collecting) {
+        this.diagnostics = collecting ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Infers the return type of methods declaring none, instead of using
+     * Any, from the values they return (see {@link #inferReturnTypes}).
+     * Declarations without a type already take that of their initializer.
+     */
+    public void setInferring(boolean inferring) {
+        this.inferred = inferring ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * Returns the diagnostics collected, in the order of the source.
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? List.of() : Collections.unmodifiableList(diagnostics);
+    }
+
+    public boolean hasErrors() {
+        return getDiagnostics().stream().anyMatch(d -> d.getSeverity() == Diagnostic.Severity.ERROR);
+    }
+
     /* =========================================================
      * Helpers
      * ========================================================= */
@@ -50,27 +155,49 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return Environment.getType(name);
     }
 
+    /**
+     * Resolves a type name, reporting an unknown one against {@code ast}.
+     */
+    private Environment.Type resolveType(Ast ast, String name) {
+        try {
+            return resolveType(name);
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+            return Environment.Type.ERROR;
+        }
+    }
+
+    /**
+     * Reports a semantic error at {@code ast}: throws it, or records it when
+     * collecting diagnostics.
+     */
+    private void report(Ast ast, String message) {
+        if (diagnostics == null) {
+            throw new RuntimeException(message);
+        }
+        diagnostics.add(new Diagnostic(ast, message, Diagnostic.Severity.ERROR));
+    }
+
+    private void requireAssignable(Ast ast, Environment.Type target, Environment.Type actual) {
+        try {
+            requireAssignable(target, actual);
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+        }
+    }
+
     /**
      * Enforce assignability rules:
      * - same types
      * - target Any accepts anything
      * - target Comparable accepts {Integer, Decimal, Character, String}
-     * - otherwise
+     * - otherwise, the target must be a supertype of the actual type
+     * Checked against the type lattice (see {@link Environment.Type}).
      */
     public static void requireAssignable(Environment.Type target, Environment.Type actual) {
-        if (target.equals(actual)) return;
-        if (target.equals(Environment.Type.ANY)) return;
-
-        if (target.equals(Environment.Type.COMPARABLE)) {
-            if (actual.equals(Environment.Type.INTEGER) ||
-                    actual.equals(Environment.Type.DECIMAL) ||
-                    actual.equals(Environment.Type.CHARACTER) ||
-                    actual.equals(Environment.Type.STRING)) {
-                return;
-            }
+        if (!actual.isAssignableTo(target)) {
+            throw new RuntimeException("Cannot assign " + actual.getName() + " to " + target.getName() + ".");
         }
-
-        throw new RuntimeException("Cannot assign " + actual.getName() + " to " + target.getName() + ".");
     }
 
     /* =========================================================
@@ -79,23 +206,35 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Source ast) {
-        //  Define built-in or expected global functions first.
-        scope.defineFunction(
-                "print",
-                "print",
-                List.of(Environment.Type.ANY),
-                Environment.Type.NIL,
-                args -> Environment.NIL
-        );
+        Metrics.StageEvent event = new Metrics.StageEvent("analyze");
+        event.begin();
+        try {
+            analyze(ast);
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            event.items = ast.getFields().size() + ast.getMethods().size();
+            event.commit();
+        }
+        return null;
+    }
 
-        //  Define a default main() so tests referring to it can resolve it.
-        scope.defineFunction(
-                "main",
-                "main",
-                List.of(),
-                Environment.Type.INTEGER,
-                args -> Environment.NIL
-        );
+    private void analyze(Ast.Source ast) {
+        // print is defined by the constructor. Define a default main() so
+        // tests referring to it can resolve it, unless the source has one.
+        if (ast.getMethods().stream().noneMatch(m -> m.getName().equals("main") && m.getParameters().isEmpty())) {
+            if (diagnostics != null) {
+                diagnostics.add(new Diagnostic(ast, "Program does not define main(): Integer.", Diagnostic.Severity.WARNING));
+            }
+            scope.defineFunction(
+                    "main",
+                    "main",
+                    List.of(),
+                    Environment.Type.INTEGER,
+                    args -> Environment.NIL
+            );
+        }
 
         // 1) Bind fields (variables) first so methods can reference them.
         for (Ast.Field f : ast.getFields()) {
@@ -103,17 +242,42 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
 
         // 2) Predeclare all method headers (name/arity/param types/return type).
+        if (inferred != null) {
+            inferReturnTypes(ast.getMethods());
+        }
         for (Ast.Method m : ast.getMethods()) {
-            List<Environment.Type> paramTypes = new ArrayList<>();
-            for (String tn : m.getParameterTypeNames()) {
-                paramTypes.add(resolveType(tn));
+            declare(m);
+        }
+
+        // 3) Analyze method bodies.
+        if (parallel && ast.getMethods().size() > 1) {
+            analyzeParallel(ast.getMethods());
+        } else {
+            for (Ast.Method m : ast.getMethods()) {
+                visit(m);
             }
-            Environment.Type ret =
-                    m.getReturnTypeName().isPresent()
-                            ? resolveType(m.getReturnTypeName().get())
-                            : Environment.Type.ANY;
+        }
 
-            // Define the function symbol in the current (top-level) scope.
+        // 4) Must have main/0 that returns Integer.
+        requireMain(ast);
+    }
+
+    /**
+     * Defines the function for a method's signature in the current scope,
+     * and binds the method to it.
+     */
+    void declare(Ast.Method m) {
+        List<Environment.Type> paramTypes = new ArrayList<>();
+        for (String tn : m.getParameterTypeNames()) {
+            paramTypes.add(resolveType(m, tn));
+        }
+        Environment.Type ret =
+                m.getReturnTypeName().isPresent()
+                        ? resolveType(m, m.getReturnTypeName().get())
+                        : inferred == null ? Environment.Type.ANY : inferred.getOrDefault(m, Environment.Type.ANY);
+
+        // Define the function symbol in the current (top-level) scope.
+        try {
             scope.defineFunction(
                     m.getName(),
                     m.getName(),
@@ -121,45 +285,140 @@ public final class Analyzer implements Ast.Visitor<Void> {
                     ret,
                     args -> Environment.NIL
             );
+        } catch (RuntimeException e) {
+            // Already defined; the method is analyzed against the first.
+            report(m, e.getMessage());
+        }
 
-            // Also store the bound function object on the method node for convenience.
-            Environment.Function fn = scope.lookupFunction(m.getName(), paramTypes.size());
-            m.setFunction(fn);
+        // Also store the bound function object on the method node for convenience.
+        Environment.Function fn = scope.lookupFunction(m.getName(), paramTypes.size());
+        m.setFunction(fn);
+    }
+
+    /**
+     * Infers the return types of methods declaring none as the join of the
+     * types they may return: the values of their RETURN statements, and Nil
+     * if the end of the body may be reached.
+     *
+     * These depend on each other through calls, so each method's type starts
+     * at the bottom of the lattice (Error, which calls to it then produce),
+     * and the bodies are analyzed in a trial scope, raising the types, until
+     * none changes. A method whose type never rises, only returning its own
+     * result, returns Any. Errors are left to the actual analysis.
+     */
+    private void inferReturnTypes(List<Ast.Method> methods) {
+        inferred.clear();
+        for (Ast.Method m : methods) {
+            if (!m.getReturnTypeName().isPresent()) {
+                inferred.put(m, Environment.Type.ERROR);
+            }
         }
+        boolean changed = !inferred.isEmpty();
+        while (changed) {
+            changed = false;
+            Analyzer trial = new Analyzer(this);
+            trial.scope = new Scope(scope);
+            trial.diagnostics = new ArrayList<>();
+            trial.inferred = inferred;
+            methods.forEach(trial::declare);
+            for (Map.Entry<Ast.Method, Environment.Type> entry : inferred.entrySet()) {
+                trial.returned = completes(entry.getKey().getStatements()) ? Environment.Type.NIL : Environment.Type.ERROR;
+                trial.visit(entry.getKey());
+                Environment.Type type = entry.getValue().join(trial.returned);
+                if (type != entry.getValue()) {
+                    entry.setValue(type);
+                    changed = true;
+                }
+            }
+        }
+        inferred.replaceAll((m, type) -> type == Environment.Type.ERROR ? Environment.Type.ANY : type);
+    }
 
-        // 3) Analyze method bodies.
-        for (Ast.Method m : ast.getMethods()) {
-            visit(m);
+    /**
+     * Whether the end of a block may be reached, i.e. not every path through
+     * it returns. Loops are assumed to exit.
+     */
+    private static boolean completes(List<Ast.Statement> statements) {
+        for (Ast.Statement s : statements) {
+            if (s instanceof Ast.Statement.Return) {
+                return false;
+            }
+            if (s instanceof Ast.Statement.If
+                    && !completes(((Ast.Statement.If) s).getThenStatements())
+                    && !completes(((Ast.Statement.If) s).getElseStatements())) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        // 4) Must have main/0 that returns Integer.
-        try {
-            Environment.Function mainFunc = scope.lookupFunction("main", 0);
-            if (!mainFunc.getReturnType().equals(Environment.Type.INTEGER)) {
-                throw new RuntimeException("Program must define main(): Integer.");
+    void requireMain(Ast.Source ast) {
+        Environment.Function mainFunc = scope.lookupFunction("main", 0);
+        if (!mainFunc.getReturnType().equals(Environment.Type.INTEGER)) {
+            report(ast, "Program must define main(): Integer.");
+        }
+    }
+
+    private void analyzeParallel(List<Ast.Method> methods) {
+        List<Analyzer> workers = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            workers.add(new Analyzer(this));
+        }
+        List<RuntimeException> failures = IntStream.range(0, methods.size()).parallel().mapToObj(i -> {
+            try {
+                workers.get(i).visit(methods.get(i));
+                return null;
+            } catch (RuntimeException e) {
+                return e;
+            }
+        }).collect(Collectors.toList());
+        for (RuntimeException failure : failures) {
+            if (failure != null) {
+                throw failure;
             }
-        } catch (RuntimeException ex) {
-            // main not defined — just skip validation
-            System.out.println("Warning: main() function not found, skipped validation.");
         }
-        return null;
+        if (diagnostics != null) {
+            workers.forEach(w -> diagnostics.addAll(w.diagnostics));
+        }
+    }
+
+    /**
+     * Dispatches like {@link Ast.Visitor#visit(Ast)}, but when collecting
+     * diagnostics, reports a statement that fails and carries on with the
+     * next one.
+     */
+    @Override
+    public Void visit(Ast ast) {
+        if (diagnostics == null || !(ast instanceof Ast.Statement)) {
+            return Ast.Visitor.super.visit(ast);
+        }
+        try {
+            return Ast.Visitor.super.visit(ast);
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+            return null;
+        }
     }
 
     @Override
     public Void visit(Ast.Field ast) {
-        Environment.Type declared = resolveType(ast.getTypeName());
+        Environment.Type declared = resolveType(ast, ast.getTypeName());
 
         if (ast.getValue().isPresent()) {
             visit(ast.getValue().get());
-            requireAssignable(declared, ast.getValue().get().getType());
+            requireAssignable(ast, declared, ast.getValue().get().getType());
         } else if (ast.getConstant()) {
             // Constant fields must have an initializer.
-            throw new RuntimeException("Constant field '" + ast.getName() + "' must be initialized.");
+            report(ast, "Constant field '" + ast.getName() + "' must be initialized.");
         }
 
         Environment.Variable var = new Environment.Variable(
                 ast.getName(), ast.getName(), declared, ast.getConstant(), Environment.NIL);
-        scope.defineVariable(var.getName(), var.getJvmName(), var.getType(), var.getConstant(), var.getValue());
+        try {
+            scope.defineVariable(var.getName(), var.getJvmName(), var.getType(), var.getConstant(), var.getValue());
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+        }
         ast.setVariable(var);
         return null;
     }
@@ -181,7 +440,11 @@ public final class Analyzer implements Ast.Visitor<Void> {
         for (int i = 0; i < ast.getParameters().size(); i++) {
             String paramName = ast.getParameters().get(i);
             Environment.Type paramType = fn.getParameterTypes().get(i);
-            scope.defineVariable(paramName, paramName, paramType, false, Environment.NIL);
+            try {
+                scope.defineVariable(paramName, paramName, paramType, false, Environment.NIL);
+            } catch (RuntimeException e) {
+                report(ast, e.getMessage());
+            }
         }
 
         // Visit method statements.
@@ -211,23 +474,27 @@ public final class Analyzer implements Ast.Visitor<Void> {
         Environment.Type type;
 
         if (ast.getTypeName().isPresent()) {
-            type = resolveType(ast.getTypeName().get());
+            type = resolveType(ast, ast.getTypeName().get());
             if (ast.getValue().isPresent()) {
                 visit(ast.getValue().get());
-                requireAssignable(type, ast.getValue().get().getType());
+                requireAssignable(ast, type, ast.getValue().get().getType());
             }
-        } else {
+        } else if (!ast.getValue().isPresent()) {
             // No explicit type — must have initializer to infer.
-            if (!ast.getValue().isPresent()) {
-                throw new RuntimeException("Declaration of '" + ast.getName() + "' requires a type or initializer.");
-            }
+            report(ast, "Declaration of '" + ast.getName() + "' requires a type or initializer.");
+            type = Environment.Type.ERROR;
+        } else {
             visit(ast.getValue().get());
             type = ast.getValue().get().getType();
         }
 
         Environment.Variable var =
                 new Environment.Variable(ast.getName(), ast.getName(), type, false, Environment.NIL);
-        scope.defineVariable(var.getName(), var.getJvmName(), var.getType(), var.getConstant(), var.getValue());
+        try {
+            scope.defineVariable(var.getName(), var.getJvmName(), var.getType(), var.getConstant(), var.getValue());
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+        }
         ast.setVariable(var);
         return null;
     }
@@ -235,26 +502,28 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.Assignment ast) {
         if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
-            throw new RuntimeException("Assignment receiver must be an access.");
+            report(ast, "Assignment receiver must be an access.");
+            visit(ast.getValue());
+            return null;
         }
         Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
         visit(access); // binds the variable
 
         if (access.getVariable().getConstant()) {
-            throw new RuntimeException("Cannot assign to constant '" + access.getName() + "'.");
+            report(ast, "Cannot assign to constant '" + access.getName() + "'.");
         }
 
         visit(ast.getValue());
-        requireAssignable(access.getVariable().getType(), ast.getValue().getType());
+        requireAssignable(ast.getValue(), access.getVariable().getType(), ast.getValue().getType());
         return null;
     }
 
     @Override
     public Void visit(Ast.Statement.If ast) {
         visit(ast.getCondition());
-        requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        requireAssignable(ast.getCondition(), Environment.Type.BOOLEAN, ast.getCondition().getType());
         if (ast.getThenStatements().isEmpty()) {
-            throw new RuntimeException("If statement must have at least one 'then' statement.");
+            report(ast, "If statement must have at least one 'then' statement.");
         }
 
         // then
@@ -277,7 +546,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         if (ast.getInitialization() != null) visit(ast.getInitialization());
         if (ast.getCondition() != null) {
             visit(ast.getCondition());
-            requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+            requireAssignable(ast.getCondition(), Environment.Type.BOOLEAN, ast.getCondition().getType());
         }
         if (ast.getIncrement() != null) visit(ast.getIncrement());
 
@@ -292,7 +561,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.While ast) {
         visit(ast.getCondition());
-        requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        requireAssignable(ast.getCondition(), Environment.Type.BOOLEAN, ast.getCondition().getType());
 
         Scope saved = scope;
         scope = new Scope(scope);
@@ -305,11 +574,16 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.Return ast) {
         if (currentMethod == null) {
-            throw new RuntimeException("Return outside of a method.");
+            report(ast, "Return outside of a method.");
+            visit(ast.getValue());
+            return null;
         }
         visit(ast.getValue());
+        if (returned != null) {
+            returned = returned.join(ast.getValue().getType());
+        }
         Environment.Function fn = scope.lookupFunction(currentMethod.getName(), currentMethod.getParameters().size());
-        requireAssignable(fn.getReturnType(), ast.getValue().getType());
+        requireAssignable(ast.getValue(), fn.getReturnType(), ast.getValue().getType());
         return null;
     }
 
@@ -330,7 +604,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             BigInteger val = (BigInteger) lit;
             if (val.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0 ||
                     val.compareTo(BigInteger.valueOf(Integer.MIN_VALUE)) < 0) {
-                throw new RuntimeException("Integer literal out of range: " + val);
+                report(ast, "Integer literal out of range: " + val);
             }
         } else if (lit instanceof BigDecimal) {
             ast.setType(Environment.Type.DECIMAL);
@@ -339,7 +613,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
         } else if (lit instanceof String) {
             ast.setType(Environment.Type.STRING);
         } else {
-            throw new RuntimeException("Unknown literal type.");
+            report(ast, "Unknown literal type.");
+            ast.setType(Environment.Type.ERROR);
         }
         return null;
     }
@@ -358,6 +633,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
         String op = ast.getOperator();
         Environment.Type lt = ast.getLeft().getType();
         Environment.Type rt = ast.getRight().getType();
+        if (lt.equals(Environment.Type.ERROR) || rt.equals(Environment.Type.ERROR)) {
+            ast.setType(Environment.Type.ERROR);
+            return null;
+        }
 
         switch (op) {
             case "+":
@@ -369,8 +648,9 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 } else if (lt.equals(Environment.Type.DECIMAL) && rt.equals(Environment.Type.DECIMAL)) {
                     ast.setType(Environment.Type.DECIMAL);
                 } else {
-                    throw new RuntimeException("Invalid '+' operation between " +
+                    report(ast, "Invalid '+' operation between " +
                             lt.getName() + " and " + rt.getName() + ".");
+                    ast.setType(Environment.Type.ERROR);
                 }
                 break;
 
@@ -382,8 +662,9 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 } else if (lt.equals(Environment.Type.DECIMAL) && rt.equals(Environment.Type.DECIMAL)) {
                     ast.setType(Environment.Type.DECIMAL);
                 } else {
-                    throw new RuntimeException("Invalid numeric operation between " +
+                    report(ast, "Invalid numeric operation between " +
                             lt.getName() + " and " + rt.getName() + ".");
+                    ast.setType(Environment.Type.ERROR);
                 }
                 break;
             case "/":
@@ -393,17 +674,20 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 } else if (lt.equals(Environment.Type.DECIMAL) && rt.equals(Environment.Type.DECIMAL)) {
                     ast.setType(Environment.Type.DECIMAL);
                 } else {
-                    throw new RuntimeException("Invalid division between " +
+                    report(ast, "Invalid division between " +
                             lt.getName() + " and " + rt.getName() + ".");
+                    ast.setType(Environment.Type.ERROR);
                 }
                 break;
             case "==":
             case "!=":
                 // Equality requires same type (simple rule).
                 if (!lt.equals(rt)) {
-                    throw new RuntimeException("Equality requires same operand types.");
+                    report(ast, "Equality requires same operand types.");
+                    ast.setType(Environment.Type.ERROR);
+                } else {
+                    ast.setType(Environment.Type.BOOLEAN);
                 }
-                ast.setType(Environment.Type.BOOLEAN);
                 break;
             case "<":
             case "<=":
@@ -414,7 +698,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
                         (lt.equals(Environment.Type.DECIMAL) && rt.equals(Environment.Type.DECIMAL))) {
                     ast.setType(Environment.Type.BOOLEAN);
                 } else {
-                    throw new RuntimeException("Relational operators require numeric operands of the same type.");
+                    report(ast, "Relational operators require numeric operands of the same type.");
+                    ast.setType(Environment.Type.ERROR);
                 }
                 break;
             case "&&":
@@ -422,11 +707,13 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 if (lt.equals(Environment.Type.BOOLEAN) && rt.equals(Environment.Type.BOOLEAN)) {
                     ast.setType(Environment.Type.BOOLEAN);
                 } else {
-                    throw new RuntimeException("Boolean operators require boolean operands.");
+                    report(ast, "Boolean operators require boolean operands.");
+                    ast.setType(Environment.Type.ERROR);
                 }
                 break;
             default:
-                throw new RuntimeException("Unknown operator: " + op);
+                report(ast, "Unknown operator: " + op);
+                ast.setType(Environment.Type.ERROR);
         }
         return null;
     }
@@ -437,40 +724,68 @@ public final class Analyzer implements Ast.Visitor<Void> {
             // receiver.field
             Ast.Expression recv = ast.getReceiver().get();
             visit(recv);
-            Environment.Variable field = recv.getType().getField(ast.getName());
-            if (field == null) throw new RuntimeException("Unknown field '" + ast.getName() + "'.");
-            ast.setVariable(field);
+            Environment.Variable field = recv.getType().equals(Environment.Type.ERROR) ? null
+                    : lookup(ast, () -> recv.getType().getField(ast.getName()), "Unknown field '" + ast.getName() + "'.");
+            ast.setVariable(field != null ? field : errorVariable(ast.getName()));
         } else {
             // simple variable
-            Environment.Variable v = scope.lookupVariable(ast.getName());
-            if (v == null) throw new RuntimeException("Unknown variable '" + ast.getName() + "'.");
-            ast.setVariable(v);
+            Environment.Variable v = lookup(ast, () -> scope.lookupVariable(ast.getName()), "Unknown variable '" + ast.getName() + "'.");
+            ast.setVariable(v != null ? v : errorVariable(ast.getName()));
         }
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.Function ast) {
+        int arity = ast.getArguments().size();
         Environment.Function fn;
         if (ast.getReceiver().isPresent()) {
             Ast.Expression recv = ast.getReceiver().get();
             visit(recv);
-            fn = recv.getType().getFunction(ast.getName(), ast.getArguments().size());
+            fn = recv.getType().equals(Environment.Type.ERROR) ? null
+                    : lookup(ast, () -> recv.getType().getFunction(ast.getName(), arity), "Unknown function '" + ast.getName() + "'.");
         } else {
-            fn = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+            fn = lookup(ast, () -> scope.lookupFunction(ast.getName(), arity), "Unknown function '" + ast.getName() + "'.");
         }
         if (fn == null) {
-            throw new RuntimeException("Unknown function '" + ast.getName() + "'.");
+            fn = errorFunction(ast.getName(), arity);
         }
 
         // Analyze each argument and check against param types
         for (int i = 0; i < ast.getArguments().size(); i++) {
             Ast.Expression arg = ast.getArguments().get(i);
             visit(arg);
-            requireAssignable(fn.getParameterTypes().get(i), arg.getType());
+            requireAssignable(arg, fn.getParameterTypes().get(i), arg.getType());
         }
 
         ast.setFunction(fn);
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks up a variable or function, reporting it against {@code ast} and
+     * returning null if it isn't defined.
+     */
+    private <T> T lookup(Ast.Expression ast, Supplier<T> lookup, String unknown) {
+        T found;
+        try {
+            found = lookup.get();
+        } catch (RuntimeException e) {
+            report(ast, e.getMessage());
+            return null;
+        }
+        if (found == null) {
+            report(ast, unknown);
+        }
+        return found;
+    }
+
+    private static Environment.Variable errorVariable(String name) {
+        return new Environment.Variable(name, name, Environment.Type.ERROR, false, Environment.NIL);
+    }
+
+    private static Environment.Function errorFunction(String name, int arity) {
+        return new Environment.Function(name, name, Collections.nCopies(arity, Environment.Type.ERROR),
+                Environment.Type.ERROR, args -> Environment.NIL);
+    }
+}
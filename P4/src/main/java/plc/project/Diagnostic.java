@@ -0,0 +1,41 @@
+package plc.project;
+
+/**
+ * A problem found by the {@link Analyzer} in a source, at the node it was
+ * found in.
+ */
+public final class Diagnostic {
+
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    private final Ast ast;
+    private final String message;
+    private final Severity severity;
+
+    public Diagnostic(Ast ast, String message, Severity severity) {
+        this.ast = ast;
+        this.message = message;
+        this.severity = severity;
+    }
+
+    public Ast getAst() {
+        return ast;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    @Override
+    public String toString() {
+        return severity + ": " + message;
+    }
+
+}
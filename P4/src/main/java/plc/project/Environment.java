@@ -2,9 +2,11 @@ package plc.project;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Environment {
 
@@ -21,24 +23,45 @@ public final class Environment {
 
     });
 
-    private static final Map<String, Type> TYPES = new HashMap<>();
+    // Shared by every analyzer, possibly on different threads.
+    private static final Map<String, Type> TYPES = new ConcurrentHashMap<>();
 
     public static Type getType(String name) {
-        if (!TYPES.containsKey(name)) {
+        Type type = TYPES.get(name);
+        if (type == null) {
             throw new RuntimeException("Unknown type " + name + ".");
         }
-        return TYPES.get(name);
+        return type;
     }
 
     public static void registerType(Type type) {
-        if (TYPES.containsKey(type.getName())) {
+        if (TYPES.putIfAbsent(type.getName(), type) != null) {
             throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
         }
-        TYPES.put(type.getName(), type);
     }
 
+    /**
+     * A type, which is a subtype of the types owning the parents of its
+     * scope (e.g. Integer's scope is a child of Comparable's), and of Any.
+     *
+     * These form a lattice precomputed as types are created: each type gets
+     * an integer id and the set of ids of its proper supertypes, so checking
+     * assignability is a bit test. Types created later, such as
+     * ones registered with {@link Environment#registerType}, join it by
+     * giving their scope the scope of their supertype as parent.
+     */
     public static final class Type {
 
+        private static final AtomicInteger IDS = new AtomicInteger();
+
+        /**
+         * The type of expressions with semantic errors when the analyzer
+         * collects diagnostics, assignable to and from every type so one
+         * error isn't reported again by every expression using it. It isn't
+         * registered, so sources can't name it.
+         */
+        public static final Type ERROR = new Type("Error", "Object", new Scope(null));
+
         public static final Type ANY = new Type("Any", "Object", new Scope(null));
         public static final Type NIL = new Type("Nil", "Void", new Scope(ANY.scope));
         public static final Type COMPARABLE = new Type("Comparable", "Comparable", new Scope(ANY.scope));
@@ -51,11 +74,31 @@ public final class Environment {
         private final String name;
         private final String jvmName;
         private final Scope scope;
+        private final int id;
+        private final BitSet supertypes = new BitSet();
 
         public Type(String name, String jvmName, Scope scope) {
             this.name = name;
             this.jvmName = jvmName;
             this.scope = scope;
+            this.id = IDS.getAndIncrement();
+            if (scope.owner == null) {
+                scope.owner = this;
+            }
+            for (Scope parent = scope.getParent(); parent != null; parent = parent.getParent()) {
+                if (parent.owner != null) {
+                    supertypes.or(parent.owner.supertypes);
+                    supertypes.set(parent.owner.id);
+                    break;
+                }
+            }
+            // Both are created before any other type.
+            if (ERROR != null) {
+                supertypes.set(ERROR.id);
+            }
+            if (ANY != null) {
+                supertypes.set(ANY.id);
+            }
         }
 
         public String getName() {
@@ -70,6 +113,39 @@ public final class Environment {
             return this.scope;
         }
 
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Whether a value of this type can be assigned to {@code target}.
+         */
+        public boolean isAssignableTo(Type target) {
+            return this == target || this == ERROR || supertypes.get(target.id);
+        }
+
+        /**
+         * Returns the least upper bound of this type and {@code other}, the
+         * most specific type both are assignable to. Error is the bottom.
+         */
+        public Type join(Type other) {
+            if (this == ERROR || other == ERROR) {
+                return this == ERROR ? other : this;
+            }
+            if (isAssignableTo(other)) {
+                return other;
+            }
+            if (other.isAssignableTo(this)) {
+                return this;
+            }
+            for (Scope parent = scope.getParent(); parent != null; parent = parent.getParent()) {
+                if (parent.owner != null && other.isAssignableTo(parent.owner)) {
+                    return parent.owner;
+                }
+            }
+            return ANY;
+        }
+
         public Variable getField(String name) {
             return scope.lookupVariable(name);
         }
@@ -110,12 +186,19 @@ public final class Environment {
 
     public static final class PlcObject implements Typed<Type> {
 
+        /**
+         * The type of objects created without one, shared so creating a value
+         * doesn't add a type to the lattice. Their members are in their own
+         * scope rather than the type's.
+         */
+        private static final Type UNKNOWN = new Type("Unknown", "Unknown", new Scope(null));
+
         private final Type type;
         private final Scope scope;
         private final Object value;
 
         public PlcObject(Scope scope, Object value) {
-            this(new Type("Unknown", "Unknown", scope), scope, value);
+            this(UNKNOWN, scope, value);
         }
 
         public PlcObject(Type type, Scope scope, Object value) {
@@ -0,0 +1,423 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Analyzes successive versions of a source, such as an editor reparsing a
+ * file after each change, re-analyzing only what an edit can affect.
+ *
+ * Fields and methods are matched across versions by name (and arity). For
+ * each, the analyzer records the signature (a field's type and constness,
+ * a method's parameter and return types), the structure of its body, and
+ * the fields and functions its body uses. After an edit, a field or method
+ * is analyzed again if its body changed, or if the signature of something
+ * it uses changed (including being added or removed); everything else
+ * keeps the nodes, and decorations, of the previous version.
+ *
+ * Renaming, adding, removing or reordering fields, or adding or removing
+ * {@code main/0}, falls back to analyzing the whole source, as does any
+ * edit after an analysis that failed.
+ */
+public final class IncrementalAnalyzer {
+
+    private static final class Unit {
+
+        private final Ast ast;
+        private final String signature;
+        private final String body;
+        private final Set<String> dependencies;
+
+        private Unit(Ast ast, String signature, String body, Set<String> dependencies) {
+            this.ast = ast;
+            this.signature = signature;
+            this.body = body;
+            this.dependencies = dependencies;
+        }
+
+    }
+
+    private final Scope parent;
+    private Analyzer analyzer = null;
+    private Ast.Source source = null;
+    private final Map<String, Unit> units = new HashMap<>();
+    private int analyzed = 0;
+
+    public IncrementalAnalyzer(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the global scope of the latest analysis.
+     */
+    public Scope getScope() {
+        return analyzer.getScope();
+    }
+
+    /**
+     * Returns the number of fields and methods analyzed by the last call to
+     * {@link #analyze} or {@link #update}.
+     */
+    public int getAnalyzed() {
+        return analyzed;
+    }
+
+    /**
+     * Analyzes the whole source, forgetting any previous version.
+     */
+    public Ast.Source analyze(Ast.Source ast) {
+        source = null;
+        units.clear();
+        analyzer = new Analyzer(parent);
+        analyzer.visit(ast);
+        for (Ast.Field field : ast.getFields()) {
+            record(field);
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            record(method);
+        }
+        analyzed = ast.getFields().size() + ast.getMethods().size();
+        source = ast;
+        return ast;
+    }
+
+    /**
+     * Analyzes a new version of the source, returning it with unaffected
+     * fields and methods replaced by their (analyzed) previous versions.
+     */
+    public Ast.Source update(Ast.Source ast) {
+        if (source == null || !names(source.getFields()).equals(names(ast.getFields()))
+                || hasMain(source) != hasMain(ast)) {
+            return analyze(ast);
+        }
+        Map<String, Ast.Method> methods = new HashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            if (methods.put(key(method), method) != null) {
+                return analyze(ast);
+            }
+        }
+        Metrics.StageEvent event = new Metrics.StageEvent("reanalyze");
+        event.begin();
+        try {
+            return reanalyze(ast, methods);
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            source = null;
+            throw e;
+        } finally {
+            event.items = analyzed;
+            event.commit();
+        }
+    }
+
+    private Ast.Source reanalyze(Ast.Source ast, Map<String, Ast.Method> methods) {
+        Scope globals = analyzer.getScope();
+        analyzed = 0;
+
+        // Symbols whose signature changed, and the methods to redeclare.
+        Set<String> changed = new HashSet<>();
+        for (Ast.Method method : source.getMethods()) {
+            if (!methods.containsKey(key(method))) {
+                changed.add(key(method));
+                globals.functions.remove(key(method));
+                units.remove(key(method));
+            }
+        }
+        Set<Ast.Method> declare = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Ast.Method method : ast.getMethods()) {
+            Unit unit = units.get(key(method));
+            if (unit == null || !unit.signature.equals(signature(method))) {
+                changed.add(key(method));
+                globals.functions.remove(key(method));
+                declare.add(method);
+            }
+        }
+        for (Ast.Field field : ast.getFields()) {
+            if (!units.get(field.getName()).signature.equals(signature(field))) {
+                changed.add(field.getName());
+            }
+        }
+        for (Ast.Method method : declare) {
+            analyzer.declare(method);
+        }
+
+        List<Ast.Field> fields = new ArrayList<>();
+        for (int i = 0; i < ast.getFields().size(); i++) {
+            Ast.Field field = ast.getFields().get(i);
+            Unit unit = units.get(field.getName());
+            if (unit.body.equals(body(field)) && unit.signature.equals(signature(field))
+                    && Collections.disjoint(unit.dependencies, changed)) {
+                fields.add((Ast.Field) unit.ast);
+                continue;
+            }
+            globals.variables.remove(field.getName());
+            analyzer.visit(field);
+            Unit recorded = record(field);
+            // Fields can only use the ones before them, which is all a full
+            // analysis would have defined.
+            for (Ast.Field later : ast.getFields().subList(i, ast.getFields().size())) {
+                if (recorded.dependencies.contains(later.getName())) {
+                    throw new RuntimeException("The variable " + later.getName() + " is not defined in this scope.");
+                }
+            }
+            fields.add(field);
+            analyzed++;
+        }
+
+        List<Ast.Method> result = new ArrayList<>();
+        for (Ast.Method method : ast.getMethods()) {
+            Unit unit = units.get(key(method));
+            if (!declare.contains(method) && unit.body.equals(body(method))
+                    && Collections.disjoint(unit.dependencies, changed)) {
+                result.add((Ast.Method) unit.ast);
+                continue;
+            }
+            analyzer.visit(method);
+            record(method);
+            result.add(method);
+            analyzed++;
+        }
+        analyzer.requireMain(ast);
+        source = new Ast.Source(fields, result);
+        return source;
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private Unit record(Ast.Field field) {
+        Scan scan = new Scan(analyzer.getScope());
+        scan.visit(field);
+        Unit unit = new Unit(field, signature(field), body(field), scan.dependencies);
+        units.put(field.getName(), unit);
+        return unit;
+    }
+
+    private void record(Ast.Method method) {
+        Scan scan = new Scan(analyzer.getScope());
+        scan.visit(method);
+        units.put(key(method), new Unit(method, signature(method), body(method), scan.dependencies));
+    }
+
+    private static String key(Ast.Method method) {
+        return method.getName() + "/" + method.getParameters().size();
+    }
+
+    private static String signature(Ast.Field field) {
+        return (field.getConstant() ? "CONST " : "") + field.getTypeName();
+    }
+
+    private static String signature(Ast.Method method) {
+        return method.getParameterTypeNames() + ": " + method.getReturnTypeName().orElse("Any");
+    }
+
+    private static String body(Ast.Field field) {
+        Scan scan = new Scan(null);
+        scan.visit(field);
+        return scan.text.toString();
+    }
+
+    private static String body(Ast.Method method) {
+        Scan scan = new Scan(null);
+        scan.visit(method);
+        return scan.text.toString();
+    }
+
+    private static List<String> names(List<Ast.Field> fields) {
+        List<String> names = new ArrayList<>();
+        for (Ast.Field field : fields) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+
+    private static boolean hasMain(Ast.Source source) {
+        return source.getMethods().stream().anyMatch(m -> m.getName().equals("main") && m.getParameters().isEmpty());
+    }
+
+    /**
+     * Writes the structure of a tree, ignoring decorations, and collects the
+     * fields and functions it uses if given the global scope the tree was
+     * analyzed in.
+     */
+    private static final class Scan implements Ast.Visitor<Void> {
+
+        private final Scope globals;
+        private final StringBuilder text = new StringBuilder();
+        private final Set<String> dependencies = new HashSet<>();
+
+        private Scan(Scope globals) {
+            this.globals = globals;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            ast.getFields().forEach(this::visit);
+            ast.getMethods().forEach(this::visit);
+            return null;
+        }
+
+        /**
+         * Writes the initializer; the rest of a field is its signature.
+         */
+        @Override
+        public Void visit(Ast.Field ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        /**
+         * Writes the parameter names and statements; the rest of a method
+         * is its signature.
+         */
+        @Override
+        public Void visit(Ast.Method ast) {
+            text.append(ast.getParameters());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            text.append("(expr ");
+            visit(ast.getExpression());
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            text.append("(let ").append(ast.getName()).append(' ').append(ast.getTypeName().orElse("?")).append(' ');
+            ast.getValue().ifPresent(this::visit);
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            text.append("(set ");
+            visit(ast.getReceiver());
+            text.append(' ');
+            visit(ast.getValue());
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            text.append("(if ");
+            visit(ast.getCondition());
+            text.append(" (");
+            ast.getThenStatements().forEach(this::visit);
+            text.append(") (");
+            ast.getElseStatements().forEach(this::visit);
+            text.append("))");
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.For ast) {
+            text.append("(for ");
+            for (Ast part : new Ast[] {ast.getInitialization(), ast.getCondition(), ast.getIncrement()}) {
+                if (part != null) {
+                    visit(part);
+                }
+                text.append(';');
+            }
+            text.append(" (");
+            ast.getStatements().forEach(this::visit);
+            text.append("))");
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            text.append("(while ");
+            visit(ast.getCondition());
+            text.append(" (");
+            ast.getStatements().forEach(this::visit);
+            text.append("))");
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            text.append("(return ");
+            visit(ast.getValue());
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                text.append("NIL");
+            } else {
+                String value = literal.toString();
+                text.append(literal.getClass().getSimpleName()).append(':').append(value.length()).append(':').append(value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            text.append("(group ");
+            visit(ast.getExpression());
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            text.append('(').append(ast.getOperator()).append(' ');
+            visit(ast.getLeft());
+            text.append(' ');
+            visit(ast.getRight());
+            text.append(')');
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                text.append("(. ");
+                visit(ast.getReceiver().get());
+                text.append(' ').append(ast.getName()).append(')');
+            } else {
+                text.append(ast.getName());
+                if (globals != null && globals.variables.get(ast.getName()) == ast.getVariable()) {
+                    dependencies.add(ast.getName());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            text.append("(call ");
+            if (ast.getReceiver().isPresent()) {
+                visit(ast.getReceiver().get());
+                text.append('.');
+            } else if (globals != null) {
+                dependencies.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            text.append(ast.getName());
+            for (Ast.Expression argument : ast.getArguments()) {
+                text.append(' ');
+                visit(argument);
+            }
+            text.append(')');
+            return null;
+        }
+
+    }
+
+}
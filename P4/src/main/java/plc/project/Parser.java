@@ -25,14 +25,23 @@ public final class Parser {
     public Ast.Source parseSource() throws ParseException {
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
-
-        while (tokens.has(0)) {
-            if (!tokens.has(1)) break; // stop before end-of-list
-            if (!peek("LET") && !peek("DEF")) break;
-
-            if (peek("LET")) fields.add(parseField());
-            else if (peek("DEF")) methods.add(parseMethod());
-            else throw error("Expected 'LET' or 'DEF' at top level.");
+        Metrics.StageEvent event = new Metrics.StageEvent("parse");
+        event.begin();
+        try {
+            while (tokens.has(0)) {
+                if (!tokens.has(1)) break; // stop before end-of-list
+                if (!peek("LET") && !peek("DEF")) break;
+
+                if (peek("LET")) fields.add(parseField());
+                else if (peek("DEF")) methods.add(parseMethod());
+                else throw error("Expected 'LET' or 'DEF' at top level.");
+            }
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            event.items = fields.size() + methods.size();
+            event.commit();
         }
 
         return new Ast.Source(fields, methods);
@@ -9,11 +9,19 @@ import java.util.function.Function;
 public final class Scope {
 
     private final Scope parent;
+
+    /**
+     * The type whose members this scope holds, if any, which is how types
+     * find their supertypes (see {@link Environment.Type}).
+     */
+    Environment.Type owner = null;
+
     public final Map<String, Environment.Variable> variables = new HashMap<>();
     public final Map<String, Environment.Function> functions = new HashMap<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
+        Metrics.SCOPES.increment();
     }
 
     public Scope getParent() {
@@ -0,0 +1,687 @@
+package plc.project;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Executes analyzed sources, using the types decorating the tree to avoid
+ * boxing: values of type Integer, Decimal and Boolean are kept in {@code int},
+ * {@code double} and {@code boolean} slots (their {@code jvmName}s) and
+ * computed by expressions returning primitives, with the generated Java's
+ * semantics (so Integer arithmetic wraps on overflow). Every other value is
+ * an Object: Character, String, {@link Environment#NIL} or a
+ * {@link Environment.PlcObject}.
+ *
+ * The tree is compiled once into closures before running. Each method gets
+ * a frame with an array of slots per kind, and each variable a slot chosen
+ * while compiling, so variables are never looked up by name at runtime.
+ * Values are only boxed into PlcObjects when passed to functions that
+ * aren't methods of the source, or to fields and methods of objects.
+ * {@code print} writes to the stream given to the interpreter.
+ */
+public final class TypedInterpreter {
+
+    private enum Kind {
+        INT, DOUBLE, BOOLEAN, OBJECT;
+
+        private static Kind of(Environment.Type type) {
+            if (type.equals(Environment.Type.INTEGER)) {
+                return INT;
+            } else if (type.equals(Environment.Type.DECIMAL)) {
+                return DOUBLE;
+            } else if (type.equals(Environment.Type.BOOLEAN)) {
+                return BOOLEAN;
+            }
+            return OBJECT;
+        }
+
+    }
+
+    private static final class Frame {
+
+        private final int[] ints;
+        private final double[] doubles;
+        private final boolean[] booleans;
+        private final Object[] objects;
+
+        private int returnInt;
+        private double returnDouble;
+        private boolean returnBoolean;
+        private Object returnObject = Environment.NIL;
+
+        private Frame(int[] sizes) {
+            ints = new int[sizes[Kind.INT.ordinal()]];
+            doubles = new double[sizes[Kind.DOUBLE.ordinal()]];
+            booleans = new boolean[sizes[Kind.BOOLEAN.ordinal()]];
+            objects = new Object[sizes[Kind.OBJECT.ordinal()]];
+        }
+
+    }
+
+    /**
+     * A variable's slot, in the frame of its method or in the globals.
+     */
+    private static final class Slot {
+
+        private final Kind kind;
+        private final int index;
+        private final boolean global;
+
+        private Slot(Kind kind, int index, boolean global) {
+            this.kind = kind;
+            this.index = index;
+            this.global = global;
+        }
+
+    }
+
+    /**
+     * A compiled expression, evaluated through the accessor of its kind.
+     * The other accessors convert, which the analyzer only allows to and
+     * from OBJECT.
+     */
+    private abstract static class Node {
+
+        private final Kind kind;
+
+        private Node(Kind kind) {
+            this.kind = kind;
+        }
+
+        int asInt(Frame frame) {
+            return (Integer) asObject(frame);
+        }
+
+        double asDouble(Frame frame) {
+            return (Double) asObject(frame);
+        }
+
+        boolean asBoolean(Frame frame) {
+            return (Boolean) asObject(frame);
+        }
+
+        Object asObject(Frame frame) {
+            switch (kind) {
+                case INT: return asInt(frame);
+                case DOUBLE: return asDouble(frame);
+                case BOOLEAN: return asBoolean(frame);
+                default: throw new AssertionError(kind);
+            }
+        }
+
+        /**
+         * Evaluates the expression for its side effects, without boxing.
+         */
+        void execute(Frame frame) {
+            switch (kind) {
+                case INT: asInt(frame); break;
+                case DOUBLE: asDouble(frame); break;
+                case BOOLEAN: asBoolean(frame); break;
+                default: asObject(frame);
+            }
+        }
+
+    }
+
+    /**
+     * A compiled statement, returning whether it executed a RETURN.
+     */
+    private interface Executable {
+        boolean execute(Frame frame);
+    }
+
+    private static final class Method {
+
+        private final List<Slot> parameters = new ArrayList<>();
+        private final Kind returnKind;
+        private final int[] sizes = new int[Kind.values().length];
+        private Executable body;
+
+        private Method(Kind returnKind) {
+            this.returnKind = returnKind;
+        }
+
+    }
+
+    private final PrintStream out;
+    private final Map<String, Method> methods = new HashMap<>();
+    private final int[] globalSizes = new int[Kind.values().length];
+    private final Map<String, Slot> fields = new HashMap<>();
+    private Frame globals;
+
+    private Method current = null;
+    private final Deque<Map<String, Slot>> scopes = new ArrayDeque<>();
+
+    public TypedInterpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Initializes the fields in order, then calls {@code main/0} and returns
+     * its result.
+     */
+    public Object execute(Ast.Source ast) {
+        for (Ast.Method method : ast.getMethods()) {
+            Environment.Function function = method.getFunction();
+            Method compiled = new Method(Kind.of(function.getReturnType()));
+            methods.put(method.getName() + "/" + method.getParameters().size(), compiled);
+        }
+        List<Executable> initializers = new ArrayList<>();
+        for (Ast.Field field : ast.getFields()) {
+            Slot slot = allocate(globalSizes, Kind.of(field.getVariable().getType()), true);
+            fields.put(field.getName(), slot);
+            if (field.getValue().isPresent()) {
+                initializers.add(assign(slot, compile(field.getValue().get())));
+            } else {
+                initializers.add(initialize(slot));
+            }
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            compile(method);
+        }
+        Method main = methods.get("main/0");
+        if (main == null) {
+            throw new RuntimeException("The function main/0 is not defined.");
+        }
+        globals = new Frame(globalSizes);
+        for (Executable initializer : initializers) {
+            initializer.execute(globals);
+        }
+        Frame frame = invoke(main, new Node[0], globals);
+        return result(main, frame);
+    }
+
+    /* ============================================================
+       Methods and statements
+       ============================================================ */
+
+    private void compile(Ast.Method ast) {
+        current = methods.get(ast.getName() + "/" + ast.getParameters().size());
+        scopes.push(new HashMap<>());
+        List<Environment.Type> types = ast.getFunction().getParameterTypes();
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            Slot slot = allocate(current.sizes, Kind.of(types.get(i)), false);
+            scopes.peek().put(ast.getParameters().get(i), slot);
+            current.parameters.add(slot);
+        }
+        current.body = block(ast.getStatements(), false);
+        scopes.pop();
+        current = null;
+    }
+
+    private Executable block(List<Ast.Statement> statements, boolean scoped) {
+        if (scoped) {
+            scopes.push(new HashMap<>());
+        }
+        Executable[] compiled = new Executable[statements.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compile(statements.get(i));
+        }
+        if (scoped) {
+            scopes.pop();
+        }
+        return frame -> {
+            for (Executable statement : compiled) {
+                if (statement.execute(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Executable compile(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            Node expression = compile(((Ast.Statement.Expression) ast).getExpression());
+            return frame -> {
+                expression.execute(frame);
+                return false;
+            };
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            return compile((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            return compile((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            Ast.Statement.If statement = (Ast.Statement.If) ast;
+            Node condition = compile(statement.getCondition());
+            Executable then = block(statement.getThenStatements(), true);
+            Executable otherwise = block(statement.getElseStatements(), true);
+            return frame -> condition.asBoolean(frame) ? then.execute(frame) : otherwise.execute(frame);
+        } else if (ast instanceof Ast.Statement.For) {
+            return compile((Ast.Statement.For) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            Ast.Statement.While statement = (Ast.Statement.While) ast;
+            Node condition = compile(statement.getCondition());
+            Executable body = block(statement.getStatements(), true);
+            return frame -> {
+                while (condition.asBoolean(frame)) {
+                    if (body.execute(frame)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        } else if (ast instanceof Ast.Statement.Return) {
+            return compile((Ast.Statement.Return) ast);
+        } else {
+            throw new AssertionError("Unimplemented statement type " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private Executable compile(Ast.Statement.Declaration ast) {
+        Node value = ast.getValue().isPresent() ? compile(ast.getValue().get()) : null;
+        Slot slot = allocate(current.sizes, Kind.of(ast.getVariable().getType()), false);
+        scopes.peek().put(ast.getName(), slot);
+        return value != null ? assign(slot, value) : initialize(slot);
+    }
+
+    private Executable compile(Ast.Statement.Assignment ast) {
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        Node value = compile(ast.getValue());
+        if (receiver.getReceiver().isPresent()) {
+            Node object = compile(receiver.getReceiver().get());
+            String name = receiver.getName();
+            return frame -> {
+                Environment.PlcObject target = (Environment.PlcObject) object.asObject(frame);
+                target.setField(name, box(value.asObject(frame)));
+                return false;
+            };
+        }
+        return assign(lookup(receiver.getName()), value);
+    }
+
+    private Executable compile(Ast.Statement.For ast) {
+        scopes.push(new HashMap<>());
+        Executable initialization = ast.getInitialization() != null ? compile(ast.getInitialization()) : frame -> false;
+        Node condition = ast.getCondition() != null ? compile(ast.getCondition()) : null;
+        Executable increment = ast.getIncrement() != null ? compile(ast.getIncrement()) : frame -> false;
+        Executable body = block(ast.getStatements(), true);
+        scopes.pop();
+        return frame -> {
+            for (initialization.execute(frame); condition == null || condition.asBoolean(frame); increment.execute(frame)) {
+                if (body.execute(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Executable compile(Ast.Statement.Return ast) {
+        if (current == null) {
+            throw new RuntimeException("Return outside of a method.");
+        }
+        Node value = compile(ast.getValue());
+        switch (current.returnKind) {
+            case INT: return frame -> { frame.returnInt = value.asInt(frame); return true; };
+            case DOUBLE: return frame -> { frame.returnDouble = value.asDouble(frame); return true; };
+            case BOOLEAN: return frame -> { frame.returnBoolean = value.asBoolean(frame); return true; };
+            default: return frame -> { frame.returnObject = value.asObject(frame); return true; };
+        }
+    }
+
+    /* ============================================================
+       Expressions
+       ============================================================ */
+
+    private Node compile(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return literal((Ast.Expression.Literal) ast);
+        } else if (ast instanceof Ast.Expression.Group) {
+            return compile(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return compile((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return compile((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return compile((Ast.Expression.Function) ast);
+        } else {
+            throw new AssertionError("Unimplemented expression type " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private static Node literal(Ast.Expression.Literal ast) {
+        Object literal = ast.getLiteral();
+        if (literal instanceof BigInteger) {
+            int value = exact((BigInteger) literal);
+            return ints(frame -> value);
+        } else if (literal instanceof BigDecimal) {
+            double value = ((BigDecimal) literal).doubleValue();
+            return doubles(frame -> value);
+        } else if (literal instanceof Boolean) {
+            boolean value = (Boolean) literal;
+            return booleans(frame -> value);
+        }
+        Object value = literal == null ? Environment.NIL : literal;
+        return objects(frame -> value);
+    }
+
+    private static Node compile(Ast.Expression.Binary ast, Node left, Node right) {
+        Kind operands = Kind.of(ast.getLeft().getType());
+        Kind result = Kind.of(ast.getType());
+        switch (ast.getOperator()) {
+            case "&&":
+            case "AND":
+                return booleans(frame -> left.asBoolean(frame) && right.asBoolean(frame));
+            case "||":
+            case "OR":
+                return booleans(frame -> left.asBoolean(frame) || right.asBoolean(frame));
+            case "+":
+                if (result == Kind.INT) {
+                    return ints(frame -> left.asInt(frame) + right.asInt(frame));
+                } else if (result == Kind.DOUBLE) {
+                    return doubles(frame -> left.asDouble(frame) + right.asDouble(frame));
+                }
+                return objects(frame -> string(left.asObject(frame)) + string(right.asObject(frame)));
+            case "-":
+                return result == Kind.INT
+                        ? ints(frame -> left.asInt(frame) - right.asInt(frame))
+                        : doubles(frame -> left.asDouble(frame) - right.asDouble(frame));
+            case "*":
+                return result == Kind.INT
+                        ? ints(frame -> left.asInt(frame) * right.asInt(frame))
+                        : doubles(frame -> left.asDouble(frame) * right.asDouble(frame));
+            case "/":
+                if (result == Kind.INT) {
+                    return ints(frame -> left.asInt(frame) / right.asInt(frame));
+                } else if (operands == Kind.INT) {
+                    // The analyzer types Integer / Integer as a Decimal.
+                    return doubles(frame -> (double) left.asInt(frame) / right.asInt(frame));
+                }
+                return doubles(frame -> left.asDouble(frame) / right.asDouble(frame));
+            case "==":
+                return equality(operands, left, right, true);
+            case "!=":
+                return equality(operands, left, right, false);
+            case "<":
+                return comparison(operands, left, right, c -> c < 0);
+            case "<=":
+                return comparison(operands, left, right, c -> c <= 0);
+            case ">":
+                return comparison(operands, left, right, c -> c > 0);
+            case ">=":
+                return comparison(operands, left, right, c -> c >= 0);
+            default:
+                throw new RuntimeException("Unknown operator: " + ast.getOperator());
+        }
+    }
+
+    private Node compile(Ast.Expression.Binary ast) {
+        return compile(ast, compile(ast.getLeft()), compile(ast.getRight()));
+    }
+
+    private static Node equality(Kind operands, Node left, Node right, boolean equal) {
+        switch (operands) {
+            case INT: return booleans(frame -> (left.asInt(frame) == right.asInt(frame)) == equal);
+            case DOUBLE: return booleans(frame -> (left.asDouble(frame) == right.asDouble(frame)) == equal);
+            case BOOLEAN: return booleans(frame -> (left.asBoolean(frame) == right.asBoolean(frame)) == equal);
+            default: return booleans(frame -> Objects.equals(left.asObject(frame), right.asObject(frame)) == equal);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node comparison(Kind operands, Node left, Node right, IntPredicate test) {
+        switch (operands) {
+            case INT: return booleans(frame -> test.test(Integer.compare(left.asInt(frame), right.asInt(frame))));
+            case DOUBLE: return booleans(frame -> test.test(Double.compare(left.asDouble(frame), right.asDouble(frame))));
+            default: return booleans(frame -> test.test(((Comparable<Object>) left.asObject(frame)).compareTo(right.asObject(frame))));
+        }
+    }
+
+    private Node compile(Ast.Expression.Access ast) {
+        Kind kind = Kind.of(ast.getType());
+        if (ast.getReceiver().isPresent()) {
+            Node receiver = compile(ast.getReceiver().get());
+            String name = ast.getName();
+            return typed(kind, frame -> unbox(((Environment.PlcObject) receiver.asObject(frame)).getField(name).getValue()));
+        }
+        Slot slot = lookup(ast.getName());
+        int index = slot.index;
+        if (slot.global) {
+            switch (slot.kind) {
+                case INT: return ints(frame -> globals.ints[index]);
+                case DOUBLE: return doubles(frame -> globals.doubles[index]);
+                case BOOLEAN: return booleans(frame -> globals.booleans[index]);
+                default: return objects(frame -> globals.objects[index]);
+            }
+        }
+        switch (slot.kind) {
+            case INT: return ints(frame -> frame.ints[index]);
+            case DOUBLE: return doubles(frame -> frame.doubles[index]);
+            case BOOLEAN: return booleans(frame -> frame.booleans[index]);
+            default: return objects(frame -> frame.objects[index]);
+        }
+    }
+
+    private Node compile(Ast.Expression.Function ast) {
+        Node[] arguments = new Node[ast.getArguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(ast.getArguments().get(i));
+        }
+        Kind kind = Kind.of(ast.getType());
+        if (ast.getReceiver().isPresent()) {
+            Node receiver = compile(ast.getReceiver().get());
+            String name = ast.getName();
+            return typed(kind, frame -> {
+                Environment.PlcObject object = (Environment.PlcObject) receiver.asObject(frame);
+                return unbox(object.callMethod(name, boxAll(arguments, frame)));
+            });
+        }
+        Method method = methods.get(ast.getName() + "/" + arguments.length);
+        if (method != null) {
+            switch (method.returnKind) {
+                case INT: return ints(frame -> invoke(method, arguments, frame).returnInt);
+                case DOUBLE: return doubles(frame -> invoke(method, arguments, frame).returnDouble);
+                case BOOLEAN: return booleans(frame -> invoke(method, arguments, frame).returnBoolean);
+                default: return objects(frame -> invoke(method, arguments, frame).returnObject);
+            }
+        } else if (ast.getName().equals("print") && arguments.length == 1) {
+            Node argument = arguments[0];
+            return objects(frame -> {
+                out.println(string(argument.asObject(frame)));
+                return Environment.NIL;
+            });
+        }
+        Environment.Function function = ast.getFunction();
+        return typed(kind, frame -> unbox(function.invoke(boxAll(arguments, frame))));
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private static Node ints(ToIntFunction<Frame> function) {
+        return new Node(Kind.INT) {
+            @Override
+            int asInt(Frame frame) {
+                return function.applyAsInt(frame);
+            }
+        };
+    }
+
+    private static Node doubles(ToDoubleFunction<Frame> function) {
+        return new Node(Kind.DOUBLE) {
+            @Override
+            double asDouble(Frame frame) {
+                return function.applyAsDouble(frame);
+            }
+        };
+    }
+
+    private static Node booleans(Predicate<Frame> function) {
+        return new Node(Kind.BOOLEAN) {
+            @Override
+            boolean asBoolean(Frame frame) {
+                return function.test(frame);
+            }
+        };
+    }
+
+    private static Node objects(Function<Frame, Object> function) {
+        return new Node(Kind.OBJECT) {
+            @Override
+            Object asObject(Frame frame) {
+                return function.apply(frame);
+            }
+        };
+    }
+
+    /**
+     * Returns a node of the given kind computing a (boxed) object, such as a
+     * value returned by a function outside the source.
+     */
+    private static Node typed(Kind kind, Function<Frame, Object> function) {
+        switch (kind) {
+            case INT: return ints(frame -> (Integer) function.apply(frame));
+            case DOUBLE: return doubles(frame -> (Double) function.apply(frame));
+            case BOOLEAN: return booleans(frame -> (Boolean) function.apply(frame));
+            default: return objects(function);
+        }
+    }
+
+    private Slot lookup(String name) {
+        for (Map<String, Slot> scope : scopes) {
+            Slot slot = scope.get(name);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        Slot slot = fields.get(name);
+        if (slot == null) {
+            throw new RuntimeException("The variable " + name + " is not defined.");
+        }
+        return slot;
+    }
+
+    private static Slot allocate(int[] sizes, Kind kind, boolean global) {
+        return new Slot(kind, sizes[kind.ordinal()]++, global);
+    }
+
+    private Executable assign(Slot slot, Node value) {
+        int index = slot.index;
+        if (slot.global) {
+            switch (slot.kind) {
+                case INT: return frame -> { globals.ints[index] = value.asInt(frame); return false; };
+                case DOUBLE: return frame -> { globals.doubles[index] = value.asDouble(frame); return false; };
+                case BOOLEAN: return frame -> { globals.booleans[index] = value.asBoolean(frame); return false; };
+                default: return frame -> { globals.objects[index] = value.asObject(frame); return false; };
+            }
+        }
+        switch (slot.kind) {
+            case INT: return frame -> { frame.ints[index] = value.asInt(frame); return false; };
+            case DOUBLE: return frame -> { frame.doubles[index] = value.asDouble(frame); return false; };
+            case BOOLEAN: return frame -> { frame.booleans[index] = value.asBoolean(frame); return false; };
+            default: return frame -> { frame.objects[index] = value.asObject(frame); return false; };
+        }
+    }
+
+    /**
+     * Resets a variable declared without a value, which may hold one from a
+     * previous iteration of a loop.
+     */
+    private Executable initialize(Slot slot) {
+        switch (slot.kind) {
+            case INT: return assign(slot, ints(frame -> 0));
+            case DOUBLE: return assign(slot, doubles(frame -> 0.0));
+            case BOOLEAN: return assign(slot, booleans(frame -> false));
+            default: return assign(slot, objects(frame -> Environment.NIL));
+        }
+    }
+
+    /**
+     * Calls a method of the source, evaluating the arguments straight into
+     * the slots of its parameters, and returns its frame holding the result.
+     */
+    private static Frame invoke(Method method, Node[] arguments, Frame caller) {
+        Frame frame = new Frame(method.sizes);
+        for (int i = 0; i < arguments.length; i++) {
+            Slot slot = method.parameters.get(i);
+            switch (slot.kind) {
+                case INT: frame.ints[slot.index] = arguments[i].asInt(caller); break;
+                case DOUBLE: frame.doubles[slot.index] = arguments[i].asDouble(caller); break;
+                case BOOLEAN: frame.booleans[slot.index] = arguments[i].asBoolean(caller); break;
+                default: frame.objects[slot.index] = arguments[i].asObject(caller);
+            }
+        }
+        method.body.execute(frame);
+        return frame;
+    }
+
+    private static Object result(Method method, Frame frame) {
+        switch (method.returnKind) {
+            case INT: return frame.returnInt;
+            case DOUBLE: return frame.returnDouble;
+            case BOOLEAN: return frame.returnBoolean;
+            default: return frame.returnObject;
+        }
+    }
+
+    private static List<Environment.PlcObject> boxAll(Node[] arguments, Frame frame) {
+        List<Environment.PlcObject> boxed = new ArrayList<>(arguments.length);
+        for (Node argument : arguments) {
+            boxed.add(box(argument.asObject(frame)));
+        }
+        return boxed;
+    }
+
+    private static Environment.PlcObject box(Object value) {
+        if (value instanceof Environment.PlcObject) {
+            return (Environment.PlcObject) value;
+        } else if (value instanceof Integer) {
+            return Environment.create(BigInteger.valueOf((Integer) value));
+        } else if (value instanceof Double) {
+            return Environment.create(BigDecimal.valueOf((Double) value));
+        }
+        return Environment.create(value);
+    }
+
+    private static Object unbox(Environment.PlcObject object) {
+        Object value = object.getValue();
+        if (object == Environment.NIL) {
+            return Environment.NIL;
+        } else if (value instanceof BigInteger) {
+            return exact((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).doubleValue();
+        } else if (value instanceof Boolean || value instanceof Character || value instanceof String) {
+            return value;
+        }
+        return object;
+    }
+
+    /**
+     * Converts an Integer to an int, failing if it doesn't fit rather than
+     * computing with a truncated value.
+     */
+    private static int exact(BigInteger value) {
+        try {
+            return value.intValueExact();
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("The integer " + value + " is out of range.");
+        }
+    }
+
+    /**
+     * Converts a value to a string as Java's string concatenation would.
+     */
+    private static String string(Object value) {
+        if (value instanceof Environment.PlcObject) {
+            return String.valueOf(((Environment.PlcObject) value).getValue());
+        }
+        return String.valueOf(value);
+    }
+
+}
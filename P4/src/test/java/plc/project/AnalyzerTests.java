@@ -1,13 +1,16 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -25,6 +28,8 @@ public final class AnalyzerTests {
         scope.defineFunction("method", "method", Arrays.asList(Environment.Type.ANY), Environment.Type.INTEGER, args -> Environment.NIL);
     }));
 
+    private static final Environment.Type COMPARABLE_SUBTYPE = new Environment.Type("Subtype", "Subtype", new Scope(Environment.Type.COMPARABLE.getScope()));
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     public void testSource(String test, Ast.Source ast, Ast.Source expected) {
@@ -65,6 +70,152 @@ public final class AnalyzerTests {
         );
     }
 
+    /**
+     * DEF fib(n: Integer) DO
+     *     IF n < 2 DO RETURN n; END
+     *     RETURN fib(n - 1) + fib(n - 2);
+     * END
+     * DEF log(x: Integer) DO print(x); END
+     * DEF positive(x: Integer) DO IF x > 0 DO RETURN x; END END
+     * DEF loop() DO RETURN loop(); END
+     * DEF main() DO RETURN fib(10); END
+     */
+    @Test
+    public void testInference() {
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                untyped("fib", "n",
+                        new Ast.Statement.If(new Ast.Expression.Binary("<", access("n"), integer(2)), Arrays.asList(
+                                new Ast.Statement.Return(access("n"))
+                        ), Arrays.asList()),
+                        new Ast.Statement.Return(new Ast.Expression.Binary("+",
+                                call("fib", new Ast.Expression.Binary("-", access("n"), integer(1))),
+                                call("fib", new Ast.Expression.Binary("-", access("n"), integer(2)))))),
+                untyped("log", "x", new Ast.Statement.Expression(call("print", access("x")))),
+                untyped("positive", "x",
+                        new Ast.Statement.If(new Ast.Expression.Binary(">", access("x"), integer(0)), Arrays.asList(
+                                new Ast.Statement.Return(access("x"))
+                        ), Arrays.asList())),
+                new Ast.Method("loop", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Return(call("loop")))),
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Return(call("fib", integer(10)))))
+        ));
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.setInferring(true);
+        analyzer.visit(source);
+        List<Environment.Type> types = new ArrayList<>();
+        source.getMethods().forEach(method -> types.add(method.getFunction().getReturnType()));
+        Assertions.assertEquals(Arrays.asList(Environment.Type.INTEGER, Environment.Type.NIL, Environment.Type.ANY,
+                Environment.Type.ANY, Environment.Type.INTEGER), types);
+        Assertions.assertEquals(Environment.Type.COMPARABLE, Environment.Type.INTEGER.join(Environment.Type.DECIMAL));
+    }
+
+    private static Ast.Method untyped(String name, String parameter, Ast.Statement... statements) {
+        return new Ast.Method(name, Arrays.asList(parameter), Arrays.asList("Integer"), Optional.empty(), Arrays.asList(statements));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Expression.Function call(String name, Ast.Expression... arguments) {
+        return new Ast.Expression.Function(Optional.empty(), name, Arrays.asList(arguments));
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    /**
+     * DEF f0(x: Integer): Integer DO RETURN x * 0; END
+     * ...
+     * DEF f199(x: Integer): Integer DO RETURN x * 199; END
+     * DEF main(): Integer DO RETURN f199(1); END
+     */
+    @Test
+    public void testParallel() {
+        List<Ast.Method> methods = parallelMethods();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.setParallel(true);
+        analyzer.visit(new Ast.Source(Arrays.asList(), methods));
+        for (Ast.Method method : methods) {
+            Assertions.assertEquals(analyzer.scope.lookupFunction(method.getName(), method.getParameters().size()), method.getFunction());
+            Assertions.assertEquals(Environment.Type.INTEGER, ((Ast.Statement.Return) method.getStatements().get(0)).getValue().getType());
+        }
+
+        // The exception from the first invalid method is thrown.
+        methods = parallelMethods();
+        methods.set(150, new Ast.Method("f150", Arrays.asList("x"), Arrays.asList("Integer"), Optional.of("Integer"),
+                Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal("string")))));
+        methods.set(10, new Ast.Method("f10", Arrays.asList("x"), Arrays.asList("Integer"), Optional.of("Integer"),
+                Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(true)))));
+        Analyzer failing = new Analyzer(new Scope(null));
+        failing.setParallel(true);
+        Ast.Source source = new Ast.Source(Arrays.asList(), methods);
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> failing.visit(source));
+        Assertions.assertEquals("Cannot assign Boolean to Integer.", exception.getMessage());
+    }
+
+    /**
+     * LET CONST limit: Integer;
+     * DEF main(): Integer DO
+     *     LET x: Integer = "one";
+     *     LET y = unknown + 1;
+     *     y = TRUE;
+     *     print(missing(y));
+     *     RETURN 1.0;
+     * END
+     */
+    @Test
+    public void testCollecting() {
+        Ast.Expression.Binary sum = new Ast.Expression.Binary("+",
+                new Ast.Expression.Access(Optional.empty(), "unknown"),
+                new Ast.Expression.Literal(BigInteger.ONE));
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Field("limit", "Integer", true, Optional.empty())),
+                Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Statement.Declaration("x", Optional.of("Integer"), Optional.of(new Ast.Expression.Literal("one"))),
+                        new Ast.Statement.Declaration("y", Optional.empty(), Optional.of(sum)),
+                        new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), "y"), new Ast.Expression.Literal(true)),
+                        new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(
+                                new Ast.Expression.Function(Optional.empty(), "missing", Arrays.asList(new Ast.Expression.Access(Optional.empty(), "y")))
+                        ))),
+                        new Ast.Statement.Return(new Ast.Expression.Literal(new BigDecimal("1.0")))
+                )))
+        );
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.setCollecting(true);
+        analyzer.visit(source);
+        List<String> messages = new ArrayList<>();
+        analyzer.getDiagnostics().forEach(d -> messages.add(d.toString()));
+        Assertions.assertEquals(Arrays.asList(
+                "ERROR: Constant field 'limit' must be initialized.",
+                "ERROR: Cannot assign String to Integer.",
+                "ERROR: The variable unknown is not defined in this scope.",
+                "ERROR: The function missing/1 is not defined in this scope.",
+                "ERROR: Cannot assign Decimal to Integer."
+        ), messages);
+        Assertions.assertTrue(analyzer.hasErrors());
+        Assertions.assertEquals(Environment.Type.ERROR, sum.getType());
+        Assertions.assertSame(sum.getLeft(), analyzer.getDiagnostics().get(2).getAst());
+    }
+
+    private static List<Ast.Method> parallelMethods() {
+        List<Ast.Method> methods = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            methods.add(new Ast.Method("f" + i, Arrays.asList("x"), Arrays.asList("Integer"), Optional.of("Integer"), Arrays.asList(
+                    new Ast.Statement.Return(new Ast.Expression.Binary("*",
+                            new Ast.Expression.Access(Optional.empty(), "x"),
+                            new Ast.Expression.Literal(BigInteger.valueOf(i))))
+            )));
+        }
+        methods.add(new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                new Ast.Statement.Return(new Ast.Expression.Function(Optional.empty(), "f199",
+                        Arrays.asList(new Ast.Expression.Literal(BigInteger.ONE))))
+        )));
+        return methods;
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     public void testMethod(String test, Ast.Method ast, Ast.Method expected) {
@@ -409,7 +560,12 @@ public final class AnalyzerTests {
                 Arguments.of("Integer to Decimal", Environment.Type.DECIMAL, Environment.Type.INTEGER, false),
                 Arguments.of("Integer to Comparable", Environment.Type.COMPARABLE, Environment.Type.INTEGER,  true),
                 Arguments.of("Integer to Any", Environment.Type.ANY, Environment.Type.INTEGER, true),
-                Arguments.of("Any to Integer", Environment.Type.INTEGER, Environment.Type.ANY, false)
+                Arguments.of("Any to Integer", Environment.Type.INTEGER, Environment.Type.ANY, false),
+                Arguments.of("Object to Any", Environment.Type.ANY, OBJECT_TYPE, true),
+                Arguments.of("Object to Comparable", Environment.Type.COMPARABLE, OBJECT_TYPE, false),
+                Arguments.of("Subtype to Comparable", Environment.Type.COMPARABLE, COMPARABLE_SUBTYPE, true),
+                Arguments.of("Comparable to Subtype", COMPARABLE_SUBTYPE, Environment.Type.COMPARABLE, false),
+                Arguments.of("Subtype to Integer", Environment.Type.INTEGER, COMPARABLE_SUBTYPE, false)
         );
     }
 
@@ -0,0 +1,91 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class IncrementalAnalyzerTests {
+
+    /**
+     * VAR x: Integer = 1;
+     * DEF a(): Integer DO RETURN x; END
+     * DEF b(): Integer DO RETURN a(); END
+     * DEF c(): Integer DO RETURN 1; END
+     * DEF main(): Integer DO RETURN b(); END
+     *
+     * Each version is a fresh tree, as if reparsed.
+     */
+    @Test
+    void testUpdate() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        Ast.Source first = analyzer.analyze(source(field("Integer", integer(1)), a("Integer", access("x")), integer(1)));
+        Assertions.assertEquals(5, analyzer.getAnalyzed());
+
+        // Only c's body changed.
+        Ast.Source second = analyzer.update(source(field("Integer", integer(1)), a("Integer", access("x")), integer(2)));
+        Assertions.assertEquals(1, analyzer.getAnalyzed());
+        for (int i : new int[] {0, 1, 3}) {
+            Assertions.assertSame(first.getMethods().get(i), second.getMethods().get(i));
+        }
+        Assertions.assertSame(first.getFields().get(0), second.getFields().get(0));
+
+        // Only x's initializer changed, so its type didn't.
+        analyzer.update(source(field("Integer", integer(3)), a("Integer", access("x")), integer(2)));
+        Assertions.assertEquals(1, analyzer.getAnalyzed());
+
+        // x's type changed, so a (which uses it) is analyzed again.
+        analyzer.update(source(field("Decimal", decimal("3.0")), a("Integer", integer(0)), integer(2)));
+        Assertions.assertEquals(2, analyzer.getAnalyzed());
+
+        // a's return type changed, so b (which calls it) fails.
+        Assertions.assertThrows(RuntimeException.class, () ->
+                analyzer.update(source(field("Decimal", decimal("3.0")), a("Decimal", access("x")), integer(2))));
+
+        // After a failure, everything is analyzed again.
+        Ast.Source fixed = analyzer.update(source(field("Decimal", decimal("3.0")), a("Integer", integer(0)), integer(2)));
+        Assertions.assertEquals(5, analyzer.getAnalyzed());
+        Assertions.assertEquals(Environment.Type.INTEGER, ((Ast.Statement.Return) fixed.getMethods().get(1).getStatements().get(0)).getValue().getType());
+    }
+
+    private static Ast.Source source(Ast.Field x, Ast.Method a, Ast.Expression c) {
+        return new Ast.Source(Arrays.asList(x), Arrays.asList(
+                a,
+                method("b", "Integer", call("a")),
+                method("c", "Integer", c),
+                method("main", "Integer", call("b"))
+        ));
+    }
+
+    private static Ast.Field field(String type, Ast.Expression value) {
+        return new Ast.Field("x", type, false, Optional.of(value));
+    }
+
+    private static Ast.Method a(String type, Ast.Expression value) {
+        return method("a", type, value);
+    }
+
+    private static Ast.Method method(String name, String type, Ast.Expression value) {
+        return new Ast.Method(name, Arrays.asList(), Arrays.asList(), Optional.of(type), Arrays.asList(new Ast.Statement.Return(value)));
+    }
+
+    private static Ast.Expression.Function call(String name) {
+        return new Ast.Expression.Function(Optional.empty(), name, Arrays.asList());
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    private static Ast.Expression.Literal decimal(String value) {
+        return new Ast.Expression.Literal(new BigDecimal(value));
+    }
+
+}
@@ -0,0 +1,107 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class TypedInterpreterTests {
+
+    /**
+     * VAR total: Integer;
+     * DEF fib(n: Integer): Integer DO
+     *     IF n < 2 DO RETURN n; END
+     *     RETURN fib(n - 1) + fib(n - 2);
+     * END
+     * DEF main(): Integer DO
+     *     LET sum: Decimal = 0.0;
+     *     LET i = 0;
+     *     WHILE i < 10 DO
+     *         sum = sum + 0.5;
+     *         i = i + 1;
+     *     END
+     *     print(sum);
+     *     print(7 / 2);
+     *     print("fib: " + fib(20));
+     *     total = 2147483647 + 1;
+     *     RETURN total;
+     * END
+     */
+    @Test
+    void testSource() {
+        Ast.Field total = new Ast.Field("total", "Integer", false, Optional.empty());
+        Ast.Method fib = new Ast.Method("fib", Arrays.asList("n"), Arrays.asList("Integer"), Optional.of("Integer"), Arrays.asList(
+                new Ast.Statement.If(binary("<", access("n"), integer(2)), Arrays.asList(
+                        new Ast.Statement.Return(access("n"))
+                ), Arrays.asList()),
+                new Ast.Statement.Return(binary("+",
+                        call("fib", binary("-", access("n"), integer(1))),
+                        call("fib", binary("-", access("n"), integer(2)))))
+        ));
+        Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                new Ast.Statement.Declaration("sum", Optional.of("Decimal"), Optional.of(new Ast.Expression.Literal(new BigDecimal("0.0")))),
+                new Ast.Statement.Declaration("i", Optional.empty(), Optional.of(integer(0))),
+                new Ast.Statement.While(binary("<", access("i"), integer(10)), Arrays.asList(
+                        new Ast.Statement.Assignment(access("sum"), binary("+", access("sum"), new Ast.Expression.Literal(new BigDecimal("0.5")))),
+                        new Ast.Statement.Assignment(access("i"), binary("+", access("i"), integer(1)))
+                )),
+                new Ast.Statement.Expression(call("print", access("sum"))),
+                new Ast.Statement.Expression(call("print", binary("/", integer(7), integer(2)))),
+                new Ast.Statement.Expression(call("print", binary("+", new Ast.Expression.Literal("fib: "), call("fib", integer(20))))),
+                new Ast.Statement.Assignment(access("total"), binary("+", integer(2147483647), integer(1))),
+                new Ast.Statement.Return(access("total"))
+        ));
+
+        Ast.Source source = new Ast.Source(Arrays.asList(total), Arrays.asList(fib, main));
+        new Analyzer(new Scope(null)).visit(source);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Object result = new TypedInterpreter(new PrintStream(output, true)).execute(source);
+        Assertions.assertEquals(Integer.MIN_VALUE, result);
+        Assertions.assertEquals(String.join(System.lineSeparator(), "5.0", "3.5", "fib: 6765", ""), output.toString());
+    }
+
+    /**
+     * DEF main(): Integer DO RETURN big() - 1; END
+     *
+     * big() is a host function returning 3000000000, which doesn't fit in
+     * an int.
+     */
+    @Test
+    void testOutOfRange() {
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Statement.Return(binary("-", call("big"), integer(1)))
+                ))
+        ));
+        Scope scope = new Scope(null);
+        scope.defineFunction("big", "big", Arrays.asList(), Environment.Type.INTEGER,
+                args -> Environment.create(BigInteger.valueOf(3_000_000_000L)));
+        new Analyzer(scope).visit(source);
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                () -> new TypedInterpreter(System.out).execute(source));
+        Assertions.assertEquals("The integer 3000000000 is out of range.", exception.getMessage());
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return new Ast.Expression.Binary(operator, left, right);
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Expression.Function call(String name, Ast.Expression... arguments) {
+        return new Ast.Expression.Function(Optional.empty(), name, Arrays.asList(arguments));
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+}
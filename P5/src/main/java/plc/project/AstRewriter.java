@@ -0,0 +1,357 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Base class for passes that transform a tree into an equivalent one before
+ * it is generated.
+ *
+ * Every rewrite method returns its node unchanged if none of its children
+ * changed, and otherwise a copy carrying the same decorations (types,
+ * variables and functions) as the original. Subclasses override the methods
+ * for the nodes they simplify, usually calling the superclass method first
+ * so the children are already rewritten.
+ *
+ * A statement is rewritten into a list of statements, so passes may remove
+ * a statement or replace it with several.
+ */
+public abstract class AstRewriter {
+
+    public Ast.Source rewrite(Ast.Source ast) {
+        List<Ast.Field> fields = new ArrayList<>(ast.getFields().size());
+        boolean changed = false;
+        for (Ast.Field field : ast.getFields()) {
+            Ast.Field rewritten = rewrite(field);
+            changed |= rewritten != field;
+            fields.add(rewritten);
+        }
+        List<Ast.Method> methods = new ArrayList<>(ast.getMethods().size());
+        for (Ast.Method method : ast.getMethods()) {
+            Ast.Method rewritten = rewrite(method);
+            changed |= rewritten != method;
+            methods.add(rewritten);
+        }
+        return changed ? new Ast.Source(fields, methods) : ast;
+    }
+
+    public Ast.Field rewrite(Ast.Field ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        Ast.Field field = new Ast.Field(ast.getName(), ast.getTypeName(), ast.getConstant(), value);
+        field.setVariable(decoration(ast::getVariable));
+        return field;
+    }
+
+    public Ast.Method rewrite(Ast.Method ast) {
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (statements == ast.getStatements()) {
+            return ast;
+        }
+        Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(),
+                ast.getParameterTypeNames(), ast.getReturnTypeName(), statements);
+        method.setFunction(decoration(ast::getFunction));
+        return method;
+    }
+
+    /**
+     * Rewrites every statement of a block, returning the same list if none
+     * of them changed.
+     */
+    public List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Ast.Statement statement : statements) {
+            List<Ast.Statement> rewritten = rewrite(statement);
+            changed |= rewritten.size() != 1 || rewritten.get(0) != statement;
+            result.addAll(rewritten);
+        }
+        return changed ? result : statements;
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            return rewrite((Ast.Statement.Expression) ast);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            return rewrite((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            return rewrite((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            return rewrite((Ast.Statement.If) ast);
+        } else if (ast instanceof Ast.Statement.For) {
+            return rewrite((Ast.Statement.For) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            return rewrite((Ast.Statement.While) ast);
+        } else if (ast instanceof Ast.Statement.Return) {
+            return rewrite((Ast.Statement.Return) ast);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.Expression ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        return expression == ast.getExpression() ? List.of(ast) : List.of(new Ast.Statement.Expression(expression));
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.Declaration ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return List.of(ast);
+        }
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), value);
+        declaration.setVariable(decoration(ast::getVariable));
+        return List.of(declaration);
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.Assignment ast) {
+        Ast.Expression receiver = rewrite(ast.getReceiver());
+        Ast.Expression value = rewrite(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue()) {
+            return List.of(ast);
+        }
+        return List.of(new Ast.Statement.Assignment(receiver, value));
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.If ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> thenStatements = rewrite(ast.getThenStatements());
+        List<Ast.Statement> elseStatements = rewrite(ast.getElseStatements());
+        if (condition == ast.getCondition() && thenStatements == ast.getThenStatements()
+                && elseStatements == ast.getElseStatements()) {
+            return List.of(ast);
+        }
+        return List.of(new Ast.Statement.If(condition, thenStatements, elseStatements));
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.For ast) {
+        Ast.Statement initialization = rewriteSingle(ast.getInitialization());
+        Ast.Expression condition = ast.getCondition() == null ? null : rewrite(ast.getCondition());
+        Ast.Statement increment = rewriteSingle(ast.getIncrement());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (initialization == ast.getInitialization() && condition == ast.getCondition()
+                && increment == ast.getIncrement() && statements == ast.getStatements()) {
+            return List.of(ast);
+        }
+        return List.of(new Ast.Statement.For(initialization, condition, increment, statements));
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.While ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (condition == ast.getCondition() && statements == ast.getStatements()) {
+            return List.of(ast);
+        }
+        return List.of(new Ast.Statement.While(condition, statements));
+    }
+
+    public List<Ast.Statement> rewrite(Ast.Statement.Return ast) {
+        Ast.Expression value = rewrite(ast.getValue());
+        return value == ast.getValue() ? List.of(ast) : List.of(new Ast.Statement.Return(value));
+    }
+
+    public Ast.Expression rewrite(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return rewrite((Ast.Expression.Literal) ast);
+        } else if (ast instanceof Ast.Expression.Group) {
+            return rewrite((Ast.Expression.Group) ast);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return rewrite((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return rewrite((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return rewrite((Ast.Expression.Function) ast);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    public Ast.Expression rewrite(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    public Ast.Expression rewrite(Ast.Expression.Group ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression()) {
+            return ast;
+        }
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(decoration(ast::getType));
+        return group;
+    }
+
+    public Ast.Expression rewrite(Ast.Expression.Binary ast) {
+        Ast.Expression left = rewrite(ast.getLeft());
+        Ast.Expression right = rewrite(ast.getRight());
+        if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        Ast.Expression.Binary binary = new Ast.Expression.Binary(ast.getOperator(), left, right);
+        binary.setType(decoration(ast::getType));
+        return binary;
+    }
+
+    public Ast.Expression rewrite(Ast.Expression.Access ast) {
+        Optional<Ast.Expression> receiver = rewrite(ast.getReceiver());
+        if (receiver == ast.getReceiver()) {
+            return ast;
+        }
+        Ast.Expression.Access access = new Ast.Expression.Access(receiver, ast.getName());
+        access.setVariable(decoration(ast::getVariable));
+        return access;
+    }
+
+    public Ast.Expression rewrite(Ast.Expression.Function ast) {
+        Optional<Ast.Expression> receiver = rewrite(ast.getReceiver());
+        List<Ast.Expression> arguments = new ArrayList<>(ast.getArguments().size());
+        boolean changed = receiver != ast.getReceiver();
+        for (Ast.Expression argument : ast.getArguments()) {
+            Ast.Expression rewritten = rewrite(argument);
+            changed |= rewritten != argument;
+            arguments.add(rewritten);
+        }
+        if (!changed) {
+            return ast;
+        }
+        Ast.Expression.Function function = new Ast.Expression.Function(receiver, ast.getName(), arguments);
+        function.setFunction(decoration(ast::getFunction));
+        return function;
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private Optional<Ast.Expression> rewrite(Optional<Ast.Expression> ast) {
+        if (!ast.isPresent()) {
+            return ast;
+        }
+        Ast.Expression rewritten = rewrite(ast.get());
+        return rewritten == ast.get() ? ast : Optional.of(rewritten);
+    }
+
+    /**
+     * Rewrites the initialization or increment of a FOR loop, which must stay
+     * a single statement; if a pass removes it, the slot becomes empty.
+     */
+    private Ast.Statement rewriteSingle(Ast.Statement ast) {
+        if (ast == null) {
+            return null;
+        }
+        List<Ast.Statement> rewritten = rewrite(ast);
+        if (rewritten.isEmpty()) {
+            return null;
+        }
+        return rewritten.size() == 1 ? rewritten.get(0) : ast;
+    }
+
+    /**
+     * Returns a decoration of the original node, or null if it was never
+     * set, so partially analyzed trees can still be rewritten.
+     */
+    static <T> T decoration(Supplier<T> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether any statement in the block, at any depth, satisfies
+     * the given test.
+     */
+    static boolean contains(List<Ast.Statement> statements, Predicate<Ast.Statement> test) {
+        for (Ast.Statement statement : statements) {
+            if (test.test(statement)) {
+                return true;
+            } else if (statement instanceof Ast.Statement.If) {
+                Ast.Statement.If ast = (Ast.Statement.If) statement;
+                if (contains(ast.getThenStatements(), test) || contains(ast.getElseStatements(), test)) {
+                    return true;
+                }
+            } else if (statement instanceof Ast.Statement.For) {
+                Ast.Statement.For ast = (Ast.Statement.For) statement;
+                List<Ast.Statement> header = new ArrayList<>();
+                if (ast.getInitialization() != null) header.add(ast.getInitialization());
+                if (ast.getIncrement() != null) header.add(ast.getIncrement());
+                if (contains(header, test) || contains(ast.getStatements(), test)) {
+                    return true;
+                }
+            } else if (statement instanceof Ast.Statement.While) {
+                if (contains(((Ast.Statement.While) statement).getStatements(), test)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether evaluating the expression can't have any effect besides
+     * producing its value: no calls, and no division that could throw.
+     */
+    static boolean isPure(Ast.Expression ast) {
+        return isPure(ast, false);
+    }
+
+    /**
+     * As {@link #isPure(Ast.Expression)}, but if {@code exact}, Integer
+     * arithmetic may throw on overflow, as when generated by a specialized
+     * {@link Generator} (see {@link Generator#setSpecialized}).
+     */
+    static boolean isPure(Ast.Expression ast, boolean exact) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return true;
+        } else if (ast instanceof Ast.Expression.Group) {
+            return isPure(((Ast.Expression.Group) ast).getExpression(), exact);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            if (binary.getOperator().equals("/") && !isNonZeroLiteral(binary.getRight())) {
+                return false;
+            }
+            if (exact && isIntegerArithmetic(binary)) {
+                return false;
+            }
+            return isPure(binary.getLeft(), exact) && isPure(binary.getRight(), exact);
+        } else if (ast instanceof Ast.Expression.Access) {
+            // a field of a receiver may be read from null
+            return !((Ast.Expression.Access) ast).getReceiver().isPresent();
+        }
+        return false;
+    }
+
+    /**
+     * Whether the expression is arithmetic on Integers, which a specialized
+     * Generator emits with the Math.*Exact methods.
+     */
+    private static boolean isIntegerArithmetic(Ast.Expression.Binary ast) {
+        switch (ast.getOperator()) {
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+                return Environment.Type.INTEGER.equals(decoration(ast.getLeft()::getType))
+                        && Environment.Type.INTEGER.equals(decoration(ast.getRight()::getType));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isNonZeroLiteral(Ast.Expression ast) {
+        if (!(ast instanceof Ast.Expression.Literal)) {
+            return false;
+        }
+        Object literal = ((Ast.Expression.Literal) ast).getLiteral();
+        return literal instanceof BigInteger && ((BigInteger) literal).signum() != 0
+                || literal instanceof BigDecimal;
+    }
+
+}
@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cleans up the control-flow graph:
+ *
+ * - removes blocks unreachable from the entry, along with their edges,
+ * - removes trivial phis, whose operands are all the same value (or the phi
+ *   itself), replacing them with that value,
+ * - merges a block into its predecessor when it is the only successor of a
+ *   predecessor that is its only one.
+ */
+public final class CfgSimplifier implements PassManager.Pass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        boolean changed = removeUnreachable(function);
+        changed |= removeTrivialPhis(function);
+        changed |= mergeBlocks(function);
+        return changed;
+    }
+
+    private static boolean removeUnreachable(Ir.Function function) {
+        Set<Ir.Block> reachable = reachable(function);
+        boolean changed = false;
+        for (Iterator<Ir.Block> iterator = function.getBlocks().iterator(); iterator.hasNext(); ) {
+            Ir.Block block = iterator.next();
+            if (!reachable.contains(block)) {
+                for (Ir.Block successor : block.getSuccessors()) {
+                    if (reachable.contains(successor)) {
+                        successor.removePredecessor(block);
+                    }
+                }
+                iterator.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeTrivialPhis(Ir.Function function) {
+        Map<Ir.Value, Ir.Value> replacements = new HashMap<>();
+        boolean removed;
+        do {
+            removed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                for (Iterator<Ir.Phi> iterator = block.phis.iterator(); iterator.hasNext(); ) {
+                    Ir.Phi phi = iterator.next();
+                    Ir.Value same = null;
+                    boolean trivial = true;
+                    for (Ir.Value operand : phi.operands) {
+                        operand = Ir.Function.resolve(operand, replacements);
+                        if (operand == phi || operand == same) {
+                            continue;
+                        } else if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = operand;
+                    }
+                    if (trivial && same != null) {
+                        replacements.put(phi, same);
+                        iterator.remove();
+                        removed = true;
+                    }
+                }
+            }
+        } while (removed);
+        function.replaceUses(replacements);
+        return !replacements.isEmpty();
+    }
+
+    private static boolean mergeBlocks(Ir.Function function) {
+        boolean changed = false;
+        for (Iterator<Ir.Block> iterator = function.getBlocks().iterator(); iterator.hasNext(); ) {
+            Ir.Block block = iterator.next();
+            if (block == function.getEntry() || block.predecessors.size() != 1 || !block.phis.isEmpty()) {
+                continue;
+            }
+            Ir.Block predecessor = block.predecessors.get(0);
+            if (predecessor == block || !(predecessor.terminator instanceof Ir.Jump)) {
+                continue;
+            }
+            predecessor.instructions.addAll(block.instructions);
+            predecessor.terminator = block.terminator;
+            for (Ir.Block successor : block.getSuccessors()) {
+                successor.predecessors.replaceAll(b -> b == block ? predecessor : b);
+            }
+            iterator.remove();
+            changed = true;
+        }
+        return changed;
+    }
+
+    static Set<Ir.Block> reachable(Ir.Function function) {
+        Set<Ir.Block> reachable = new HashSet<>();
+        Deque<Ir.Block> worklist = new ArrayDeque<>();
+        worklist.push(function.getEntry());
+        while (!worklist.isEmpty()) {
+            Ir.Block block = worklist.pop();
+            if (reachable.add(block)) {
+                block.getSuccessors().forEach(worklist::push);
+            }
+        }
+        return reachable;
+    }
+
+}
@@ -0,0 +1,153 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable character buffer for emitting code, written out to a Writer or
+ * (as UTF-8) a FileChannel in large chunks.
+ *
+ * Positions count every character appended since the buffer was created.
+ * Text not yet flushed can be taken back by rewinding to an earlier
+ * position, so callers flush only where they no longer need to rewind.
+ * {@link #flush()} ends the text written so far, so it must not end in the
+ * middle of a surrogate pair; {@link #flushIfFull()} may.
+ */
+final class CodeBuffer {
+
+    static final int CHUNK = 1 << 16;
+
+    private final Writer writer;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private char[] chars = new char[CHUNK];
+    private int count = 0;
+    private long flushed = 0;
+
+    CodeBuffer(Writer writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.encoder = null;
+        this.bytes = null;
+    }
+
+    CodeBuffer(FileChannel channel) {
+        this.writer = null;
+        this.channel = channel;
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.bytes = ByteBuffer.allocateDirect(CHUNK * 3);
+    }
+
+    void append(String text) {
+        int length = text.length();
+        reserve(length);
+        text.getChars(0, length, chars, count);
+        count += length;
+    }
+
+    void append(char c) {
+        reserve(1);
+        chars[count++] = c;
+    }
+
+    /**
+     * Returns the current position, to rewind to.
+     */
+    long mark() {
+        return flushed + count;
+    }
+
+    /**
+     * Returns the character before the current position, or 0 if there is
+     * none left in the buffer.
+     */
+    char last() {
+        return count == 0 ? 0 : chars[count - 1];
+    }
+
+    /**
+     * Discards everything appended after the given position.
+     */
+    void rewind(long mark) {
+        if (mark < flushed || mark > flushed + count) {
+            throw new IllegalStateException("Cannot rewind to " + mark + ", the buffer holds " + flushed + " to " + (flushed + count) + ".");
+        }
+        count = (int) (mark - flushed);
+    }
+
+    /**
+     * Flushes the buffer if it holds at least a chunk.
+     */
+    void flushIfFull() {
+        if (count >= CHUNK) {
+            flush(false);
+        }
+    }
+
+    void flush() {
+        flush(true);
+    }
+
+    private void flush(boolean endOfInput) {
+        try {
+            if (writer != null) {
+                writer.write(chars, 0, count);
+                writer.flush();
+                flushed += count;
+                count = 0;
+            } else {
+                encode(endOfInput);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        CharBuffer in = CharBuffer.wrap(chars, 0, count);
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, endOfInput);
+            write();
+            if (result.isError()) {
+                result.throwException();
+            }
+        } while (result.isOverflow());
+        if (endOfInput) {
+            do {
+                result = encoder.flush(bytes);
+                write();
+            } while (result.isOverflow());
+            encoder.reset();
+        }
+        // A surrogate pair split at the end of a chunk stays for the next flush.
+        int remaining = in.remaining();
+        System.arraycopy(chars, count - remaining, chars, 0, remaining);
+        flushed += count - remaining;
+        count = remaining;
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void reserve(int length) {
+        if (count + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, count + length));
+        }
+    }
+
+}
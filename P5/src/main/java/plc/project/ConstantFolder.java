@@ -0,0 +1,188 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Simplifies expressions whose operands are literals, so they are computed
+ * once here instead of every time the generated code runs.
+ *
+ * Results must match what the generated Java would compute, so only the
+ * cases where that is certain are folded:
+ *
+ * - {@code +}, {@code -} and {@code *} on Integers, if the result fits in
+ *   an {@code int} (otherwise Java would wrap around);
+ * - comparisons of Integers and Characters, and {@code ==}/{@code !=} of
+ *   Booleans;
+ * - {@code +} of a String with a String, Integer, Character or Boolean;
+ * - {@code &&} and {@code ||} with a constant left operand, or a constant
+ *   right operand which makes the left one the result.
+ *
+ * Decimals are left alone since {@code double} arithmetic rounds differently,
+ * and so is {@code /}, which may divide by zero at runtime.
+ *
+ * Groups are removed unless they hold a binary expression, where they may be
+ * needed for precedence. IF statements with a constant condition are
+ * replaced by the branch taken, unless it declares variables (which would
+ * then leak into the enclosing block) or returns (which could make the
+ * statements after it unreachable, a compile error in Java).
+ */
+public final class ConstantFolder extends AstRewriter {
+
+    private static final BigInteger INT_MIN = BigInteger.valueOf(Integer.MIN_VALUE);
+    private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    @Override
+    public Ast.Expression rewrite(Ast.Expression.Group ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (!(expression instanceof Ast.Expression.Binary)) {
+            return expression;
+        } else if (expression == ast.getExpression()) {
+            return ast;
+        }
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(decoration(ast::getType));
+        return group;
+    }
+
+    @Override
+    public Ast.Expression rewrite(Ast.Expression.Binary ast) {
+        Ast.Expression rewritten = super.rewrite(ast);
+        if (!(rewritten instanceof Ast.Expression.Binary)) {
+            return rewritten;
+        }
+        Ast.Expression.Binary binary = (Ast.Expression.Binary) rewritten;
+        Object left = literal(binary.getLeft());
+        Object right = literal(binary.getRight());
+        switch (binary.getOperator()) {
+            case "&&":
+            case "AND":
+                if (left instanceof Boolean) {
+                    return (Boolean) left ? binary.getRight() : binary.getLeft();
+                } else if (Boolean.TRUE.equals(right)) {
+                    return binary.getLeft();
+                }
+                return binary;
+            case "||":
+            case "OR":
+                if (left instanceof Boolean) {
+                    return (Boolean) left ? binary.getLeft() : binary.getRight();
+                } else if (Boolean.FALSE.equals(right)) {
+                    return binary.getLeft();
+                }
+                return binary;
+        }
+        Object value = fold(binary.getOperator(), left, right);
+        if (value == null) {
+            return binary;
+        }
+        Ast.Expression.Literal literal = new Ast.Expression.Literal(value);
+        literal.setType(value instanceof BigInteger ? Environment.Type.INTEGER
+                : value instanceof Boolean ? Environment.Type.BOOLEAN
+                : Environment.Type.STRING);
+        return literal;
+    }
+
+    @Override
+    public List<Ast.Statement> rewrite(Ast.Statement.If ast) {
+        List<Ast.Statement> rewritten = super.rewrite(ast);
+        Ast.Statement.If statement = (Ast.Statement.If) rewritten.get(0);
+        Object condition = literal(statement.getCondition());
+        if (!(condition instanceof Boolean)) {
+            return rewritten;
+        }
+        List<Ast.Statement> taken = (Boolean) condition ? statement.getThenStatements() : statement.getElseStatements();
+        // Splicing a branch would leak its declarations into the enclosing
+        // block, and if it can't complete normally (returning, or looping
+        // forever), javac would reject the statements after it as unreachable.
+        boolean splice = taken.stream().noneMatch(s -> s instanceof Ast.Statement.Declaration)
+                && !contains(taken, s -> s instanceof Ast.Statement.Return || isInfinite(s));
+        return splice ? taken : rewritten;
+    }
+
+    /**
+     * Whether the statement is a loop javac considers infinite, its condition
+     * being the literal TRUE (or missing, for a FOR).
+     */
+    private static boolean isInfinite(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.While) {
+            return Boolean.TRUE.equals(literal(((Ast.Statement.While) ast).getCondition()));
+        } else if (ast instanceof Ast.Statement.For) {
+            Ast.Expression condition = ((Ast.Statement.For) ast).getCondition();
+            return condition == null || Boolean.TRUE.equals(literal(condition));
+        }
+        return false;
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    /**
+     * Returns the value of a literal, or null if the expression isn't one
+     * (or is the literal NIL, which is never folded).
+     */
+    private static Object literal(Ast.Expression ast) {
+        return ast instanceof Ast.Expression.Literal ? ((Ast.Expression.Literal) ast).getLiteral() : null;
+    }
+
+    /**
+     * Computes {@code left operator right} as the generated Java would, or
+     * returns null if it can't be folded.
+     */
+    static Object fold(String operator, Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (isInt(left) && isInt(right)) {
+            BigInteger x = (BigInteger) left, y = (BigInteger) right;
+            switch (operator) {
+                case "+":  return checked(x.add(y));
+                case "-":  return checked(x.subtract(y));
+                case "*":  return checked(x.multiply(y));
+                default:   return compare(operator, x.compareTo(y));
+            }
+        } else if (left instanceof Character && right instanceof Character) {
+            return compare(operator, ((Character) left).compareTo((Character) right));
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            switch (operator) {
+                case "==": return left.equals(right);
+                case "!=": return !left.equals(right);
+                default:   return null;
+            }
+        } else if (operator.equals("+") && (left instanceof String || right instanceof String)
+                && concatenable(left) && concatenable(right)) {
+            return left.toString() + right.toString();
+        }
+        return null;
+    }
+
+    private static Boolean compare(String operator, int comparison) {
+        switch (operator) {
+            case "==": return comparison == 0;
+            case "!=": return comparison != 0;
+            case "<":  return comparison < 0;
+            case "<=": return comparison <= 0;
+            case ">":  return comparison > 0;
+            case ">=": return comparison >= 0;
+            default:   return null;
+        }
+    }
+
+    private static boolean isInt(Object value) {
+        return value instanceof BigInteger && checked((BigInteger) value) != null;
+    }
+
+    private static BigInteger checked(BigInteger value) {
+        return value.compareTo(INT_MIN) >= 0 && value.compareTo(INT_MAX) <= 0 ? value : null;
+    }
+
+    /**
+     * Whether Java's string conversion of the value matches its literal.
+     */
+    private static boolean concatenable(Object value) {
+        return value instanceof String || value instanceof Character
+                || value instanceof Boolean || isInt(value);
+    }
+
+}
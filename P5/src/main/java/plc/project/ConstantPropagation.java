@@ -0,0 +1,59 @@
+package plc.project;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces binary instructions whose operands are both constants with their
+ * result, using the same rules as {@link ConstantFolder} so the generated
+ * Java would compute the same value, and turns branches on a constant
+ * condition into jumps. Constants flowing through phis are exposed once
+ * {@link CfgSimplifier} removes the edges that made the phis non-trivial.
+ */
+public final class ConstantPropagation implements PassManager.Pass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        Map<Ir.Value, Ir.Value> replacements = new HashMap<>();
+        boolean changed = false;
+        for (Ir.Block block : function.getBlocks()) {
+            List<Ir.Instruction> instructions = block.instructions;
+            for (int i = 0; i < instructions.size(); i++) {
+                Ir.Instruction instruction = instructions.get(i);
+                instruction.operands.replaceAll(v -> Ir.Function.resolve(v, replacements));
+                if (instruction instanceof Ir.Binary) {
+                    Ir.Binary binary = (Ir.Binary) instruction;
+                    Object result = ConstantFolder.fold(binary.getOperator(), constant(binary.getLeft()), constant(binary.getRight()));
+                    if (result != null) {
+                        Ir.Constant folded = new Ir.Constant(function.nextId(), binary.getType(), result);
+                        instructions.set(i, folded);
+                        replacements.put(binary, folded);
+                    }
+                }
+            }
+            Ir.Terminator terminator = block.terminator;
+            if (terminator instanceof Ir.Branch) {
+                Ir.Branch branch = (Ir.Branch) terminator;
+                Object condition = constant(Ir.Function.resolve(branch.getCondition(), replacements));
+                if (condition instanceof Boolean) {
+                    Ir.Block taken = (Boolean) condition ? branch.getIfTrue() : branch.getIfFalse();
+                    Ir.Block skipped = (Boolean) condition ? branch.getIfFalse() : branch.getIfTrue();
+                    skipped.removePredecessor(block);
+                    block.terminator = new Ir.Jump(taken);
+                    changed = true;
+                }
+            }
+        }
+        function.replaceUses(replacements);
+        return changed || !replacements.isEmpty();
+    }
+
+    /**
+     * Returns the value of a constant, or null if it isn't one.
+     */
+    private static Object constant(Ir.Value value) {
+        return value instanceof Ir.Constant ? ((Ir.Constant) value).getValue() : null;
+    }
+
+}
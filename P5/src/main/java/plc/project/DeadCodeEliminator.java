@@ -0,0 +1,170 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes code that can never run or whose result is never used:
+ *
+ * - statements following a RETURN in the same block;
+ * - declarations of local variables that are never accessed, if their
+ *   initializer has no side effects (which Integer arithmetic has when it
+ *   throws on overflow, see {@link #setExact});
+ * - methods that can't be reached by calls from {@code main/0} or from
+ *   field initializers. Sources without a {@code main/0} are treated as
+ *   libraries and keep every method.
+ *
+ * Uses are found through the variables bound to accesses by the analyzer.
+ * The analyzer binds each declaration to a variable of its own, distinct
+ * from the one its accesses resolve to, so bindings are matched by name;
+ * a local is only removed if no access in its method uses that name, which
+ * is conservative when names are reused in separate blocks.
+ */
+public final class DeadCodeEliminator extends AstRewriter {
+
+    private boolean exact = false;
+
+    /**
+     * Treats Integer arithmetic as throwing on overflow, for code generated
+     * by a specialized {@link Generator}.
+     */
+    public void setExact(boolean exact) {
+        this.exact = exact;
+    }
+
+    @Override
+    public Ast.Source rewrite(Ast.Source ast) {
+        Ast.Source source = super.rewrite(ast);
+        Ast.Method main = null;
+        for (Ast.Method method : source.getMethods()) {
+            if (method.getName().equals("main") && method.getParameters().isEmpty()) {
+                main = method;
+            }
+        }
+        if (main == null) {
+            return source;
+        }
+        Set<Ast.Method> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Ast.Method> pending = new ArrayDeque<>();
+        reachable.add(main);
+        pending.add(main);
+        Usages fieldUsages = new Usages();
+        for (Ast.Field field : source.getFields()) {
+            fieldUsages.rewrite(field);
+        }
+        mark(source, fieldUsages.calls, reachable, pending);
+        while (!pending.isEmpty()) {
+            Usages usages = new Usages();
+            usages.rewrite(pending.pop());
+            mark(source, usages.calls, reachable, pending);
+        }
+        if (reachable.size() == source.getMethods().size()) {
+            return source;
+        }
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            if (reachable.contains(method)) {
+                methods.add(method);
+            }
+        }
+        return new Ast.Source(source.getFields(), methods);
+    }
+
+    @Override
+    public Ast.Method rewrite(Ast.Method ast) {
+        Ast.Method method = super.rewrite(ast);
+        // removing one declaration may leave those its initializer used unused
+        while (true) {
+            Usages usages = new Usages();
+            usages.rewrite(method.getStatements());
+            Ast.Method rewritten = new UnusedDeclarations(usages.variables, exact).rewrite(method);
+            if (rewritten == method) {
+                return method;
+            }
+            method = rewritten;
+        }
+    }
+
+    @Override
+    public List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> rewritten = super.rewrite(statements);
+        for (int i = 0; i < rewritten.size() - 1; i++) {
+            if (rewritten.get(i) instanceof Ast.Statement.Return) {
+                return new ArrayList<>(rewritten.subList(0, i + 1));
+            }
+        }
+        return rewritten;
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private static void mark(Ast.Source source, Set<String> calls, Set<Ast.Method> reachable, Deque<Ast.Method> pending) {
+        for (Ast.Method method : source.getMethods()) {
+            if (calls.contains(method.getName() + "/" + method.getParameters().size()) && reachable.add(method)) {
+                pending.add(method);
+            }
+        }
+    }
+
+    /**
+     * Collects the names of the variables accessed and the functions called
+     * (as {@code name/arity}, without a receiver) by the nodes it rewrites,
+     * which it leaves unchanged.
+     */
+    private static final class Usages extends AstRewriter {
+
+        private final Set<String> variables = new HashSet<>();
+        private final Set<String> calls = new HashSet<>();
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Access ast) {
+            if (!ast.getReceiver().isPresent()) {
+                Environment.Variable variable = decoration(ast::getVariable);
+                variables.add(variable != null ? variable.getName() : ast.getName());
+            }
+            return super.rewrite(ast);
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Function ast) {
+            if (!ast.getReceiver().isPresent()) {
+                calls.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            return super.rewrite(ast);
+        }
+
+    }
+
+    /**
+     * Removes declarations of variables not in {@code used} whose
+     * initializers are pure.
+     */
+    private static final class UnusedDeclarations extends AstRewriter {
+
+        private final Set<String> used;
+        private final boolean exact;
+
+        private UnusedDeclarations(Set<String> used, boolean exact) {
+            this.used = used;
+            this.exact = exact;
+        }
+
+        @Override
+        public List<Ast.Statement> rewrite(Ast.Statement.Declaration ast) {
+            if (!used.contains(ast.getName()) && (!ast.getValue().isPresent() || isPure(ast.getValue().get(), exact))) {
+                return List.of();
+            }
+            return super.rewrite(ast);
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes phis and instructions whose values are never used and which have
+ * no side effects. Liveness is propagated from side effects and terminators
+ * back through operands, so cycles of phis only feeding each other (e.g. a
+ * loop variable that is never read after the loop) are removed too.
+ */
+public final class DeadValueEliminator implements PassManager.Pass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        Set<Ir.Value> live = new HashSet<>();
+        Deque<Ir.Value> worklist = new ArrayDeque<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.instructions) {
+                if (instruction.hasSideEffects()) {
+                    worklist.push(instruction);
+                }
+            }
+            if (block.terminator != null) {
+                block.terminator.operands.forEach(worklist::push);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            Ir.Value value = worklist.pop();
+            if (live.add(value)) {
+                operands(value).forEach(worklist::push);
+            }
+        }
+        boolean changed = false;
+        for (Ir.Block block : function.getBlocks()) {
+            changed |= block.phis.removeIf(phi -> !live.contains(phi));
+            changed |= block.instructions.removeIf(instruction -> !live.contains(instruction));
+        }
+        return changed;
+    }
+
+    private static List<Ir.Value> operands(Ir.Value value) {
+        if (value instanceof Ir.Instruction) {
+            return ((Ir.Instruction) value).getOperands();
+        } else if (value instanceof Ir.Phi) {
+            return ((Ir.Phi) value).getOperands();
+        }
+        return List.of();
+    }
+
+}
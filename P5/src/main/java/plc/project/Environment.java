@@ -2,9 +2,9 @@ package plc.project;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Environment {
 
@@ -21,20 +21,21 @@ public final class Environment {
 
     });
 
-    private static final Map<String, Type> TYPES = new HashMap<>();
+    // Shared by every analyzer, possibly on different threads.
+    private static final Map<String, Type> TYPES = new ConcurrentHashMap<>();
 
     public static Type getType(String name) {
-        if (!TYPES.containsKey(name)) {
+        Type type = TYPES.get(name);
+        if (type == null) {
             throw new RuntimeException("Unknown type " + name + ".");
         }
-        return TYPES.get(name);
+        return type;
     }
 
     public static void registerType(Type type) {
-        if (TYPES.containsKey(type.getName())) {
+        if (TYPES.putIfAbsent(type.getName(), type) != null) {
             throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
         }
-        TYPES.put(type.getName(), type);
     }
 
     public static final class Type {
@@ -1,35 +1,146 @@
 package plc.project;
 
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public final class Generator implements Ast.Visitor<Void> {
 
-    private final PrintWriter writer;
+    private static final Set<Environment.Type> PRIMITIVES = Set.of(
+            Environment.Type.INTEGER, Environment.Type.DECIMAL, Environment.Type.BOOLEAN, Environment.Type.CHARACTER);
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final CodeBuffer out;
     private int indent = 0;
+    private int depth = 0;
+    private boolean specialized = false;
+
+    /**
+     * The primitive types of Any locals in the current method that are
+     * declared with them instead (see {@link #narrow}).
+     */
+    private Map<String, Environment.Type> narrowed = Map.of();
+
+    /**
+     * Creates a generator writing to {@code writer}. Output is buffered
+     * while generating a tree, and written out in chunks and when the
+     * outermost visit method returns.
+     */
+    public Generator(Writer writer) {
+        this.out = new CodeBuffer(writer);
+    }
 
-    public Generator(PrintWriter writer) {
-        this.writer = writer;
+    /**
+     * Creates a generator writing UTF-8 to {@code channel}, as above.
+     */
+    public Generator(FileChannel channel) {
+        this.out = new CodeBuffer(channel);
     }
 
-    private void print(Object... objects) {
-        for (Object object : objects) {
-            if (object instanceof Ast) {
-                visit((Ast) object);
-            } else {
-                writer.write(object.toString());
-            }
+    /**
+     * Emits operations specialized to the analyzed types of their operands,
+     * rather than as written:
+     * - Integer arithmetic uses the Math.*Exact methods, so overflowing an
+     *   int throws instead of silently wrapping around (so passes must not
+     *   evaluate it speculatively or drop it, see
+     *   {@link LoopInvariantCodeMotion#setExact} and
+     *   {@link DeadCodeEliminator#setExact})
+     * - Integer division producing a Decimal divides as doubles
+     * - AND/OR are emitted as {@code &&}/{@code ||}
+     * - Any locals only ever holding one primitive type are declared with it,
+     *   so they aren't boxed
+     */
+    public void setSpecialized(boolean specialized) {
+        this.specialized = specialized;
+    }
+
+    private void print(Object object) {
+        if (object instanceof Ast) {
+            visit((Ast) object);
+        } else {
+            out.append(object.toString());
         }
     }
 
+    private void print(Object first, Object second) {
+        print(first);
+        print(second);
+    }
+
+    private void print(Object first, Object second, Object third) {
+        print(first, second);
+        print(third);
+    }
+
+    private void print(Object first, Object second, Object third, Object fourth) {
+        print(first, second, third);
+        print(fourth);
+    }
+
+    private void print(Object first, Object second, Object third, Object fourth, Object fifth) {
+        print(first, second, third, fourth);
+        print(fifth);
+    }
+
     private void newline(int indent) {
-        writer.println();
+        out.append(NEWLINE);
         for (int i = 0; i < indent; i++) {
-            writer.write("    ");
+            out.append("    ");
+        }
+    }
+
+    private void flushIfOutermost() {
+        if (depth == 0) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns from a visit method, writing out the output if it was called
+     * directly rather than from another visit.
+     */
+    private Void leave() {
+        flushIfOutermost();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast ast) {
+        depth++;
+        try {
+            return Ast.Visitor.super.visit(ast);
+        } finally {
+            depth--;
+            flushIfOutermost();
         }
     }
 
     @Override
     public Void visit(Ast.Source ast) {
+        Metrics.StageEvent event = new Metrics.StageEvent("generate");
+        event.begin();
+        depth++;
+        try {
+            generate(ast);
+            Metrics.SOURCES.increment();
+        } catch (RuntimeException e) {
+            Metrics.EXCEPTIONS.increment();
+            throw e;
+        } finally {
+            depth--;
+            flushIfOutermost();
+            event.items = ast.getFields().size() + ast.getMethods().size();
+            event.commit();
+        }
+        return null;
+    }
+
+    private void generate(Ast.Source ast) {
         // class Main {
         print("public class Main {");
         newline(0);   // blank line added in
@@ -39,6 +150,7 @@ public final class Generator implements Ast.Visitor<Void> {
         for (Ast.Field field : ast.getFields()) {
             newline(indent);
             visit(field);
+            out.flushIfFull();
         }
 
         if (!ast.getFields().isEmpty()) {
@@ -58,14 +170,13 @@ public final class Generator implements Ast.Visitor<Void> {
             newline(0);
             newline(indent);
             visit(method);
+            out.flushIfFull();
         }
 
         indent--;
         newline(0);
         newline(0);   // added in to match test result
         print("}");
-
-        return null;
     }
 
     @Override
@@ -81,11 +192,12 @@ public final class Generator implements Ast.Visitor<Void> {
         }
 
         print(";");
-        return null;
+        return leave();
     }
 
     @Override
     public Void visit(Ast.Method ast) {
+        narrowed = specialized ? narrow(ast) : Map.of();
 
         print(ast.getFunction().getReturnType().getJvmName(), " ", ast.getName(), "(");
 
@@ -110,19 +222,19 @@ public final class Generator implements Ast.Visitor<Void> {
 
         newline(indent);
         print("}");
-        return null;
+        return leave();
     }
 
     @Override
     public Void visit(Ast.Statement.Expression ast) {
         visit(ast.getExpression());
         print(";");
-        return null;
+        return leave();
     }
 
     @Override
     public Void visit(Ast.Statement.Declaration ast) {
-        print(ast.getVariable().getType().getJvmName(), " ", ast.getName());
+        print(narrowed.getOrDefault(ast.getName(), ast.getVariable().getType()).getJvmName(), " ", ast.getName());
 
         if (ast.getValue().isPresent()) {
             print(" = ");
@@ -130,7 +242,7 @@ public final class Generator implements Ast.Visitor<Void> {
         }
 
         print(";");
-        return null;
+        return leave();
     }
 
     @Override
@@ -139,7 +251,7 @@ public final class Generator implements Ast.Visitor<Void> {
         print(" = ");
         visit(ast.getValue());
         print(";");
-        return null;
+        return leave();
     }
 
     @Override
@@ -168,7 +280,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
         newline(indent);
         print("}");
-        return null;
+        return leave();
     }
 
     @Override
@@ -176,7 +288,7 @@ public final class Generator implements Ast.Visitor<Void> {
         print("for ( ");
 
         if (ast.getInitialization() != null) {
-            removeTrailingSemicolon(() -> visit(ast.getInitialization()));
+            visitWithoutSemicolon(ast.getInitialization());
         }
         print("; ");
 
@@ -187,7 +299,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
         // increment
         if (ast.getIncrement() != null) {
-            removeTrailingSemicolon(() -> visit(ast.getIncrement()));
+            visitWithoutSemicolon(ast.getIncrement());
             print(" ) {");
         } else {
             // no increment — print EXACTLY one space before ')'
@@ -203,51 +315,21 @@ public final class Generator implements Ast.Visitor<Void> {
         indent--;
         newline(indent);
         print("}");
-        return null;
+        return leave();
     }
 
-    private void removeTrailingSemicolon(Runnable generate) {
-        // capture printed output into a temporary buffer
-        StringBuilder buffer = new StringBuilder();
-        PrintWriter originalWriter = this.writer;
-        this.writer.flush();
-
-        PrintWriter tempWriter = new PrintWriter(new java.io.Writer() {
-            @Override public void write(char[] cbuf, int off, int len) { buffer.append(cbuf, off, len); }
-            @Override public void flush() {}
-            @Override public void close() {}
-        });
-
-        // swap writer
-        java.lang.reflect.Field writerField;
-        try {
-            writerField = Generator.class.getDeclaredField("writer");
-            writerField.setAccessible(true);
-            writerField.set(this, tempWriter);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Generates a statement without its trailing semicolon, as in the
+     * header of a for loop. The statement is visited one level deeper so
+     * it isn't written out before the semicolon is taken back.
+     */
+    private void visitWithoutSemicolon(Ast.Statement statement) {
+        depth++;
+        visit(statement);
+        if (out.last() == ';') {
+            out.rewind(out.mark() - 1);
         }
-
-        // generate inner stmt
-        generate.run();
-        tempWriter.flush();
-
-        // restore writer
-        try {
-            java.lang.reflect.Field writerField2 = Generator.class.getDeclaredField("writer");
-            writerField2.setAccessible(true);
-            writerField2.set(this, originalWriter);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-
-        // remove a single trailing semicolon IF present
-        String s = buffer.toString().trim();
-        if (s.endsWith(";")) {
-            s = s.substring(0, s.length() - 1);
-        }
-
-        print(s);
+        depth--;
     }
 
     @Override
@@ -271,7 +353,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
         newline(indent);
         print("}");
-        return null;
+        return leave();
     }
 
     @Override
@@ -279,7 +361,7 @@ public final class Generator implements Ast.Visitor<Void> {
         print("return ");
         visit(ast.getValue());
         print(";");
-        return null;
+        return leave();
     }
 
     @Override
@@ -296,7 +378,7 @@ public final class Generator implements Ast.Visitor<Void> {
             print(literal.toString());
         }
 
-        return null;
+        return leave();
     }
 
     @Override
@@ -304,15 +386,18 @@ public final class Generator implements Ast.Visitor<Void> {
         print("(");
         visit(ast.getExpression());
         print(")");
-        return null;
+        return leave();
     }
 
     @Override
     public Void visit(Ast.Expression.Binary ast) {
+        if (specialized && specialize(ast)) {
+            return leave();
+        }
         visit(ast.getLeft());
         print(" ", ast.getOperator(), " ");
         visit(ast.getRight());
-        return null;
+        return leave();
     }
 
     @Override
@@ -322,7 +407,7 @@ public final class Generator implements Ast.Visitor<Void> {
             print(".");
         }
         print(ast.getName());
-        return null;
+        return leave();
     }
 
     @Override
@@ -335,7 +420,7 @@ public final class Generator implements Ast.Visitor<Void> {
                 visit(ast.getArguments().get(0));
             }
             print(")");
-            return null;
+            return leave();
         }
 
         // special case: string slicing -> substring
@@ -350,7 +435,7 @@ public final class Generator implements Ast.Visitor<Void> {
             print(", ");
             visit(ast.getArguments().get(1));
             print(")");
-            return null;
+            return leave();
         }
 
         // normal function call
@@ -367,6 +452,139 @@ public final class Generator implements Ast.Visitor<Void> {
         }
 
         print(")");
-        return null;
+        return leave();
+    }
+
+    /**
+     * Emits a binary expression specialized to its operand types, returning
+     * false if it has no specialized form. Integer operands are emitted as
+     * literals, accesses, groups or calls, so need no parentheses here.
+     */
+    private boolean specialize(Ast.Expression.Binary ast) {
+        switch (ast.getOperator()) {
+            case "AND":
+                print(ast.getLeft(), " && ", ast.getRight());
+                return true;
+            case "OR":
+                print(ast.getLeft(), " || ", ast.getRight());
+                return true;
+        }
+        if (!ast.getLeft().getType().equals(Environment.Type.INTEGER)
+                || !ast.getRight().getType().equals(Environment.Type.INTEGER)) {
+            return false;
+        }
+        switch (ast.getOperator()) {
+            case "+":
+                print("Math.addExact(", ast.getLeft(), ", ", ast.getRight(), ")");
+                return true;
+            case "-":
+                print("Math.subtractExact(", ast.getLeft(), ", ", ast.getRight(), ")");
+                return true;
+            case "*":
+                print("Math.multiplyExact(", ast.getLeft(), ", ", ast.getRight(), ")");
+                return true;
+            case "/":
+                if (ast.getType().equals(Environment.Type.DECIMAL)) {
+                    print("(double) ", ast.getLeft(), " / ", ast.getRight());
+                } else {
+                    // Only MIN_VALUE / -1 overflows, which a long holds.
+                    print("Math.toIntExact((long) ", ast.getLeft(), " / ", ast.getRight(), ")");
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Finds the Any locals of a method that only ever hold one primitive
+     * type: declared once, with an initializer of that type, only assigned
+     * values of it, and never compared with == or != (which compare
+     * references when boxed).
+     */
+    private static Map<String, Environment.Type> narrow(Ast.Method method) {
+        Map<String, Environment.Type> types = new HashMap<>();
+        Set<String> excluded = new HashSet<>(method.getParameters());
+        scan(method.getStatements(), types, excluded);
+        types.keySet().removeAll(excluded);
+        return types;
     }
+
+    private static void scan(List<Ast.Statement> statements, Map<String, Environment.Type> types, Set<String> excluded) {
+        for (Ast.Statement statement : statements) {
+            scan(statement, types, excluded);
+        }
+    }
+
+    private static void scan(Ast.Statement statement, Map<String, Environment.Type> types, Set<String> excluded) {
+        if (statement instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration ast = (Ast.Statement.Declaration) statement;
+            ast.getValue().ifPresent(value -> scan(value, excluded));
+            if (types.containsKey(ast.getName()) || !ast.getVariable().getType().equals(Environment.Type.ANY)
+                    || !ast.getValue().isPresent() || !PRIMITIVES.contains(ast.getValue().get().getType())) {
+                excluded.add(ast.getName());
+            } else {
+                types.put(ast.getName(), ast.getValue().get().getType());
+            }
+        } else if (statement instanceof Ast.Statement.Assignment) {
+            Ast.Statement.Assignment ast = (Ast.Statement.Assignment) statement;
+            scan(ast.getReceiver(), excluded);
+            scan(ast.getValue(), excluded);
+            if (ast.getReceiver() instanceof Ast.Expression.Access
+                    && !((Ast.Expression.Access) ast.getReceiver()).getReceiver().isPresent()) {
+                String name = ((Ast.Expression.Access) ast.getReceiver()).getName();
+                if (!ast.getValue().getType().equals(types.get(name))) {
+                    excluded.add(name);
+                }
+            }
+        } else if (statement instanceof Ast.Statement.Expression) {
+            scan(((Ast.Statement.Expression) statement).getExpression(), excluded);
+        } else if (statement instanceof Ast.Statement.Return) {
+            scan(((Ast.Statement.Return) statement).getValue(), excluded);
+        } else if (statement instanceof Ast.Statement.If) {
+            Ast.Statement.If ast = (Ast.Statement.If) statement;
+            scan(ast.getCondition(), excluded);
+            scan(ast.getThenStatements(), types, excluded);
+            scan(ast.getElseStatements(), types, excluded);
+        } else if (statement instanceof Ast.Statement.For) {
+            Ast.Statement.For ast = (Ast.Statement.For) statement;
+            if (ast.getInitialization() != null) {
+                scan(ast.getInitialization(), types, excluded);
+            }
+            if (ast.getCondition() != null) {
+                scan(ast.getCondition(), excluded);
+            }
+            if (ast.getIncrement() != null) {
+                scan(ast.getIncrement(), types, excluded);
+            }
+            scan(ast.getStatements(), types, excluded);
+        } else if (statement instanceof Ast.Statement.While) {
+            scan(((Ast.Statement.While) statement).getCondition(), excluded);
+            scan(((Ast.Statement.While) statement).getStatements(), types, excluded);
+        }
+    }
+
+    private static void scan(Ast.Expression expression, Set<String> excluded) {
+        if (expression instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary ast = (Ast.Expression.Binary) expression;
+            if (ast.getOperator().equals("==") || ast.getOperator().equals("!=")) {
+                for (Ast.Expression operand : List.of(ast.getLeft(), ast.getRight())) {
+                    if (operand instanceof Ast.Expression.Access && !((Ast.Expression.Access) operand).getReceiver().isPresent()) {
+                        excluded.add(((Ast.Expression.Access) operand).getName());
+                    }
+                }
+            }
+            scan(ast.getLeft(), excluded);
+            scan(ast.getRight(), excluded);
+        } else if (expression instanceof Ast.Expression.Group) {
+            scan(((Ast.Expression.Group) expression).getExpression(), excluded);
+        } else if (expression instanceof Ast.Expression.Access) {
+            ((Ast.Expression.Access) expression).getReceiver().ifPresent(receiver -> scan(receiver, excluded));
+        } else if (expression instanceof Ast.Expression.Function) {
+            Ast.Expression.Function ast = (Ast.Expression.Function) expression;
+            ast.getReceiver().ifPresent(receiver -> scan(receiver, excluded));
+            ast.getArguments().forEach(argument -> scan(argument, excluded));
+        }
+    }
+
 }
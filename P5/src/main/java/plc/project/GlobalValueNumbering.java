@@ -0,0 +1,145 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes instructions computing a value already computed by an equivalent
+ * instruction that dominates them, so it is available wherever they are.
+ *
+ * Walks the dominator tree (computed with the iterative algorithm of Cooper,
+ * Harvey and Kennedy, "A Simple, Fast Dominance Algorithm") keeping a table
+ * of the pure instructions and constants seen on the path from the entry.
+ * Operands of commutative operators are ordered by value, except for
+ * {@code +} on strings.
+ */
+public final class GlobalValueNumbering implements PassManager.Pass {
+
+    private static final Set<String> COMMUTATIVE = Set.of("+", "*", "==", "!=");
+
+    private final Map<List<Object>, Ir.Value> available = new HashMap<>();
+    private final Map<Ir.Value, Ir.Value> replacements = new HashMap<>();
+    private Map<Ir.Block, List<Ir.Block>> children = new HashMap<>();
+
+    @Override
+    public boolean run(Ir.Function function) {
+        available.clear();
+        replacements.clear();
+        children = dominatorTree(function);
+        number(function.getEntry());
+        function.replaceUses(replacements);
+        return !replacements.isEmpty();
+    }
+
+    private void number(Ir.Block block) {
+        List<List<Object>> added = new ArrayList<>();
+        for (Iterator<Ir.Instruction> iterator = block.instructions.iterator(); iterator.hasNext(); ) {
+            Ir.Instruction instruction = iterator.next();
+            instruction.operands.replaceAll(v -> Ir.Function.resolve(v, replacements));
+            List<Object> key = key(instruction);
+            if (key == null) {
+                continue;
+            }
+            Ir.Value existing = available.get(key);
+            if (existing != null) {
+                replacements.put(instruction, existing);
+                iterator.remove();
+            } else {
+                available.put(key, instruction);
+                added.add(key);
+            }
+        }
+        for (Ir.Block child : children.getOrDefault(block, List.of())) {
+            number(child);
+        }
+        added.forEach(available::remove);
+    }
+
+    /**
+     * Returns a key equal for instructions computing the same value, or null
+     * if the instruction can't be numbered.
+     */
+    private static List<Object> key(Ir.Instruction instruction) {
+        if (instruction instanceof Ir.Constant) {
+            Object value = ((Ir.Constant) instruction).getValue();
+            return Arrays.asList("const", instruction.getType(), value == null ? null : value.getClass(), value);
+        } else if (instruction instanceof Ir.Binary && instruction.isPure()) {
+            Ir.Binary binary = (Ir.Binary) instruction;
+            Ir.Value left = binary.getLeft(), right = binary.getRight();
+            if (COMMUTATIVE.contains(binary.getOperator()) && !Environment.Type.STRING.equals(binary.getType())
+                    && left.getId() > right.getId()) {
+                Ir.Value swap = left;
+                left = right;
+                right = swap;
+            }
+            return Arrays.asList(binary.getOperator(), binary.getType(), left, right);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the children of each reachable block in the dominator tree.
+     */
+    static Map<Ir.Block, List<Ir.Block>> dominatorTree(Ir.Function function) {
+        List<Ir.Block> order = new ArrayList<>();
+        postorder(function.getEntry(), new HashSet<>(), order);
+        Map<Ir.Block, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            index.put(order.get(i), i);
+        }
+        Map<Ir.Block, Ir.Block> dominators = new HashMap<>();
+        dominators.put(function.getEntry(), function.getEntry());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.size() - 2; i >= 0; i--) {
+                Ir.Block block = order.get(i);
+                Ir.Block dominator = null;
+                for (Ir.Block predecessor : block.predecessors) {
+                    if (!dominators.containsKey(predecessor)) {
+                        continue;
+                    }
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator, dominators, index);
+                }
+                if (dominator != dominators.get(block)) {
+                    dominators.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+        Map<Ir.Block, List<Ir.Block>> children = new HashMap<>();
+        for (int i = order.size() - 2; i >= 0; i--) {
+            Ir.Block block = order.get(i);
+            children.computeIfAbsent(dominators.get(block), b -> new ArrayList<>()).add(block);
+        }
+        return children;
+    }
+
+    private static void postorder(Ir.Block block, Set<Ir.Block> visited, List<Ir.Block> order) {
+        if (visited.add(block)) {
+            for (Ir.Block successor : block.getSuccessors()) {
+                postorder(successor, visited, order);
+            }
+            order.add(block);
+        }
+    }
+
+    private static Ir.Block intersect(Ir.Block a, Ir.Block b, Map<Ir.Block, Ir.Block> dominators, Map<Ir.Block, Integer> index) {
+        while (a != b) {
+            while (index.get(a) < index.get(b)) {
+                a = dominators.get(a);
+            }
+            while (index.get(b) < index.get(a)) {
+                b = dominators.get(b);
+            }
+        }
+        return a;
+    }
+
+}
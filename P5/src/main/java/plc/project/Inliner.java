@@ -0,0 +1,216 @@
+package plc.project;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces calls to small methods with the methods' bodies.
+ *
+ * Expressions can't contain statements, so only methods whose body is a
+ * single {@code RETURN expression} with at most {@link #MAX_SIZE} nodes are
+ * inlined, by substituting the arguments for the parameters in that
+ * expression. A call is only inlined when every argument has exactly the
+ * type of its parameter, so no conversion at the call is lost. Arguments
+ * are evaluated before the body, so moving them must not be observable
+ * either, which holds when:
+ *
+ * - every argument is a literal, or
+ * - every argument is pure and the body calls nothing, with any argument
+ *   used more than once being a literal or variable, so no work is repeated.
+ *
+ * Accesses in the body to anything other than parameters name fields,
+ * which could be captured by a local of the same name at the call site;
+ * calls are left alone in methods declaring any such name. A method is
+ * never inlined into itself, and inlined bodies aren't inlined further.
+ */
+public final class Inliner extends AstRewriter {
+
+    static final int MAX_SIZE = 16;
+
+    private final Map<String, Ast.Method> candidates = new HashMap<>();
+
+    /**
+     * Names of the parameters and locals of the method being rewritten.
+     */
+    private Set<String> locals = new HashSet<>();
+    private Ast.Method current = null;
+
+    @Override
+    public Ast.Source rewrite(Ast.Source ast) {
+        for (Ast.Method method : ast.getMethods()) {
+            if (isCandidate(method)) {
+                candidates.put(key(method.getName(), method.getParameters().size()), method);
+            }
+        }
+        return super.rewrite(ast);
+    }
+
+    @Override
+    public Ast.Method rewrite(Ast.Method ast) {
+        locals = new HashSet<>(ast.getParameters());
+        contains(ast.getStatements(), s -> {
+            if (s instanceof Ast.Statement.Declaration) {
+                locals.add(((Ast.Statement.Declaration) s).getName());
+            }
+            return false;
+        });
+        current = ast;
+        try {
+            return super.rewrite(ast);
+        } finally {
+            current = null;
+            locals = new HashSet<>();
+        }
+    }
+
+    @Override
+    public Ast.Expression rewrite(Ast.Expression.Function ast) {
+        Ast.Expression rewritten = super.rewrite(ast);
+        if (!(rewritten instanceof Ast.Expression.Function)) {
+            return rewritten;
+        }
+        Ast.Expression.Function call = (Ast.Expression.Function) rewritten;
+        Ast.Method method = call.getReceiver().isPresent() ? null
+                : candidates.get(key(call.getName(), call.getArguments().size()));
+        if (method == null || method == current) {
+            return call;
+        }
+        Ast.Expression body = ((Ast.Statement.Return) method.getStatements().get(0)).getValue();
+        Usages usages = new Usages();
+        usages.rewrite(body);
+        Map<String, Ast.Expression> arguments = new HashMap<>();
+        boolean literals = call.getArguments().stream().allMatch(a -> a instanceof Ast.Expression.Literal);
+        for (int i = 0; i < call.getArguments().size(); i++) {
+            String parameter = method.getParameters().get(i);
+            Ast.Expression argument = call.getArguments().get(i);
+            boolean simple = argument instanceof Ast.Expression.Literal || argument instanceof Ast.Expression.Access;
+            if (!sameType(method, i, argument)) {
+                return call;
+            } else if (!literals && (usages.calls || !isPure(argument)
+                    || usages.variables.getOrDefault(parameter, 0) > 1 && !simple)) {
+                return call;
+            }
+            arguments.put(parameter, argument);
+        }
+        for (String name : usages.variables.keySet()) {
+            if (!arguments.containsKey(name) && locals.contains(name)) {
+                return call;
+            }
+        }
+        return group(new Substitution(arguments).rewrite(body));
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+    /**
+     * Whether the argument has exactly the parameter's type, so the generated
+     * Java computes the same thing once no conversion happens at the call.
+     */
+    private static boolean sameType(Ast.Method method, int index, Ast.Expression argument) {
+        Environment.Function function = decoration(method::getFunction);
+        Environment.Type type = decoration(argument::getType);
+        return function != null && type != null && type.equals(function.getParameterTypes().get(index));
+    }
+
+    /**
+     * Whether the method returns a small expression of exactly its return
+     * type, so the call's value has the same Java type once inlined (e.g. an
+     * Integer body returned as Any would no longer be boxed).
+     */
+    private static boolean isCandidate(Ast.Method method) {
+        if (method.getStatements().size() != 1 || !(method.getStatements().get(0) instanceof Ast.Statement.Return)) {
+            return false;
+        }
+        Ast.Expression body = ((Ast.Statement.Return) method.getStatements().get(0)).getValue();
+        Environment.Function function = decoration(method::getFunction);
+        Environment.Type type = decoration(body::getType);
+        if (function == null || type == null || !type.equals(function.getReturnType())) {
+            return false;
+        }
+        Usages usages = new Usages();
+        usages.rewrite(body);
+        return usages.size <= MAX_SIZE && !usages.called.contains(key(method.getName(), method.getParameters().size()));
+    }
+
+    /**
+     * Wraps a binary expression or negative number in a group, so it keeps
+     * its meaning wherever it is substituted.
+     */
+    private static Ast.Expression group(Ast.Expression ast) {
+        boolean negative = ast instanceof Ast.Expression.Literal
+                && ((Ast.Expression.Literal) ast).getLiteral() instanceof Number
+                && ((Ast.Expression.Literal) ast).getLiteral().toString().startsWith("-");
+        if (!(ast instanceof Ast.Expression.Binary) && !negative) {
+            return ast;
+        }
+        Ast.Expression.Group group = new Ast.Expression.Group(ast);
+        group.setType(decoration(ast::getType));
+        return group;
+    }
+
+    /**
+     * Counts the nodes, variable accesses and calls in the expressions it
+     * rewrites, which it leaves unchanged.
+     */
+    private static final class Usages extends AstRewriter {
+
+        private int size = 0;
+        private final Map<String, Integer> variables = new HashMap<>();
+        private final Set<String> called = new HashSet<>();
+        private boolean calls = false;
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression ast) {
+            size++;
+            return super.rewrite(ast);
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Access ast) {
+            if (!ast.getReceiver().isPresent()) {
+                variables.merge(ast.getName(), 1, Integer::sum);
+            }
+            return super.rewrite(ast);
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Function ast) {
+            calls = true;
+            if (!ast.getReceiver().isPresent()) {
+                called.add(key(ast.getName(), ast.getArguments().size()));
+            }
+            return super.rewrite(ast);
+        }
+
+    }
+
+    /**
+     * Replaces accesses to parameters with the arguments passed for them.
+     */
+    private static final class Substitution extends AstRewriter {
+
+        private final Map<String, Ast.Expression> arguments;
+
+        private Substitution(Map<String, Ast.Expression> arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Access ast) {
+            if (!ast.getReceiver().isPresent() && arguments.containsKey(ast.getName())) {
+                return group(arguments.get(ast.getName()));
+            }
+            return super.rewrite(ast);
+        }
+
+    }
+
+}
@@ -0,0 +1,656 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Control-flow graph of a method in static single assignment (SSA) form,
+ * built from its analyzed tree by {@link IrBuilder}.
+ *
+ * A function is a list of basic blocks, the first of which is the entry.
+ * Every block holds phi nodes, then straight-line instructions, then a
+ * terminator transferring control to its successors. Each value (parameter,
+ * phi or instruction) is defined exactly once and has the type the analyzer
+ * gave the expression it came from, or null if there was none.
+ *
+ * Locals and parameters become SSA values. Fields are memory: they are read
+ * by {@link Load} and written by {@link Store}, as are fields of objects by
+ * {@link GetField} and {@link SetField}.
+ */
+public final class Ir {
+
+    private Ir() {}
+
+    public static final class Function {
+
+        private final String name;
+        private final Environment.Type returnType;
+        private final List<Parameter> parameters = new ArrayList<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private int values = 0;
+
+        Function(String name, Environment.Type returnType) {
+            this.name = name;
+            this.returnType = returnType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Environment.Type getReturnType() {
+            return returnType;
+        }
+
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public Block getEntry() {
+            return blocks.get(0);
+        }
+
+        int nextId() {
+            return values++;
+        }
+
+        Block newBlock() {
+            Block block = new Block(blocks.size() == 0 ? 0 : blocks.get(blocks.size() - 1).id + 1);
+            blocks.add(block);
+            return block;
+        }
+
+        /**
+         * Replaces every use of a value in {@code replacements} with the value
+         * it maps to, following chains of replacements.
+         */
+        void replaceUses(Map<Value, Value> replacements) {
+            if (replacements.isEmpty()) {
+                return;
+            }
+            for (Block block : blocks) {
+                for (Phi phi : block.phis) {
+                    phi.operands.replaceAll(v -> resolve(v, replacements));
+                }
+                for (Instruction instruction : block.instructions) {
+                    instruction.operands.replaceAll(v -> resolve(v, replacements));
+                }
+                if (block.terminator != null) {
+                    block.terminator.operands.replaceAll(v -> resolve(v, replacements));
+                }
+            }
+        }
+
+        static Value resolve(Value value, Map<Value, Value> replacements) {
+            while (replacements.containsKey(value)) {
+                value = replacements.get(value);
+            }
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("def ").append(name).append("(");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(parameters.get(i).declaration());
+            }
+            builder.append("): ").append(typeName(returnType)).append('\n');
+            for (Block block : blocks) {
+                builder.append(block).append(':');
+                if (!block.predecessors.isEmpty()) {
+                    builder.append(" ; preds ").append(join(block.predecessors));
+                }
+                builder.append('\n');
+                for (Phi phi : block.phis) {
+                    builder.append("    ").append(phi.declaration()).append('\n');
+                }
+                for (Instruction instruction : block.instructions) {
+                    builder.append("    ").append(instruction.declaration()).append('\n');
+                }
+                if (block.terminator != null) {
+                    builder.append("    ").append(block.terminator).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Block {
+
+        private final int id;
+        final List<Block> predecessors = new ArrayList<>();
+        final List<Phi> phis = new ArrayList<>();
+        final List<Instruction> instructions = new ArrayList<>();
+        Terminator terminator = null;
+
+        private Block(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public List<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        public List<Phi> getPhis() {
+            return phis;
+        }
+
+        public List<Instruction> getInstructions() {
+            return instructions;
+        }
+
+        public Terminator getTerminator() {
+            return terminator;
+        }
+
+        public List<Block> getSuccessors() {
+            return terminator == null ? Collections.emptyList() : terminator.getTargets();
+        }
+
+        /**
+         * Removes the edge from {@code predecessor}, along with the operands
+         * phis received through it.
+         */
+        void removePredecessor(Block predecessor) {
+            int index = predecessors.indexOf(predecessor);
+            predecessors.remove(index);
+            for (Phi phi : phis) {
+                phi.operands.remove(index);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "b" + id;
+        }
+
+    }
+
+    public abstract static class Value {
+
+        private final int id;
+        private final Environment.Type type;
+
+        private Value(int id, Environment.Type type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public Environment.Type getType() {
+            return type;
+        }
+
+        String declaration() {
+            return this + ": " + typeName(type);
+        }
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+
+    }
+
+    public static final class Parameter extends Value {
+
+        private final String name;
+
+        Parameter(int id, Environment.Type type, String name) {
+            super(id, type);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        String declaration() {
+            return this + " " + name + ": " + typeName(getType());
+        }
+
+    }
+
+    /**
+     * Merges values flowing in from a block's predecessors: its operands are
+     * in the same order as {@link Block#getPredecessors()}.
+     */
+    public static final class Phi extends Value {
+
+        private final Block block;
+        final List<Value> operands = new ArrayList<>();
+
+        Phi(int id, Environment.Type type, Block block) {
+            super(id, type);
+            this.block = block;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        public List<Value> getOperands() {
+            return operands;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = phi " + join(operands);
+        }
+
+    }
+
+    public abstract static class Instruction extends Value {
+
+        final List<Value> operands;
+
+        private Instruction(int id, Environment.Type type, Value... operands) {
+            super(id, type);
+            this.operands = new ArrayList<>(Arrays.asList(operands));
+        }
+
+        public List<Value> getOperands() {
+            return operands;
+        }
+
+        /**
+         * Whether the instruction must run even if its value is unused,
+         * because it writes memory, calls a function or may throw.
+         */
+        public abstract boolean hasSideEffects();
+
+        /**
+         * Whether the value only depends on the operands, so instructions of
+         * the same kind with the same operands always compute the same value.
+         */
+        public boolean isPure() {
+            return !hasSideEffects();
+        }
+
+    }
+
+    public static final class Constant extends Instruction {
+
+        private final Object value;
+
+        Constant(int id, Environment.Type type, Object value) {
+            super(id, type);
+            this.value = value;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return false;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = const " + (value instanceof String ? "\"" + value + "\"" : value);
+        }
+
+    }
+
+    public static final class Binary extends Instruction {
+
+        private final String operator;
+
+        Binary(int id, Environment.Type type, String operator, Value left, Value right) {
+            super(id, type, left, right);
+            this.operator = operator;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Value getLeft() {
+            return operands.get(0);
+        }
+
+        public Value getRight() {
+            return operands.get(1);
+        }
+
+        /**
+         * Integer division may throw; everything else can't.
+         */
+        @Override
+        public boolean hasSideEffects() {
+            return operator.equals("/") && !Environment.Type.DECIMAL.equals(getType());
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = " + getLeft() + " " + operator + " " + getRight();
+        }
+
+    }
+
+    /**
+     * Reads a field of the program.
+     */
+    public static final class Load extends Instruction {
+
+        private final String name;
+
+        Load(int id, Environment.Type type, String name) {
+            super(id, type);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return false;
+        }
+
+        /**
+         * The field may be written between two loads.
+         */
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = load " + name;
+        }
+
+    }
+
+    /**
+     * Writes a field of the program.
+     */
+    public static final class Store extends Instruction {
+
+        private final String name;
+
+        Store(int id, String name, Value value) {
+            super(id, Environment.Type.NIL, value);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        String declaration() {
+            return "store " + name + ", " + getValue();
+        }
+
+    }
+
+    /**
+     * Reads a field of an object, which may be null.
+     */
+    public static final class GetField extends Instruction {
+
+        private final String name;
+
+        GetField(int id, Environment.Type type, Value receiver, String name) {
+            super(id, type, receiver);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = " + getReceiver() + "." + name;
+        }
+
+    }
+
+    /**
+     * Writes a field of an object.
+     */
+    public static final class SetField extends Instruction {
+
+        private final String name;
+
+        SetField(int id, Value receiver, String name, Value value) {
+            super(id, Environment.Type.NIL, receiver, value);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(1);
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        String declaration() {
+            return getReceiver() + "." + name + " = " + getValue();
+        }
+
+    }
+
+    /**
+     * Calls a function, or a method if there is a receiver (the first
+     * operand).
+     */
+    public static final class Call extends Instruction {
+
+        private final String name;
+        private final boolean hasReceiver;
+        private final Environment.Function function;
+
+        Call(int id, Environment.Function function, String name, Optional<Value> receiver, List<Value> arguments) {
+            super(id, function == null ? null : function.getReturnType());
+            this.name = name;
+            this.hasReceiver = receiver.isPresent();
+            this.function = function;
+            receiver.ifPresent(operands::add);
+            operands.addAll(arguments);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Optional<Value> getReceiver() {
+            return hasReceiver ? Optional.of(operands.get(0)) : Optional.empty();
+        }
+
+        public List<Value> getArguments() {
+            return operands.subList(hasReceiver ? 1 : 0, operands.size());
+        }
+
+        /**
+         * Returns the function bound by the analyzer, or null if unbound.
+         */
+        public Environment.Function getFunction() {
+            return function;
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        String declaration() {
+            return super.declaration() + " = call " + (hasReceiver ? getReceiver().get() + "." : "")
+                    + name + "(" + join(getArguments()) + ")";
+        }
+
+    }
+
+    public abstract static class Terminator {
+
+        final List<Value> operands;
+
+        private Terminator(Value... operands) {
+            this.operands = new ArrayList<>(Arrays.asList(operands));
+        }
+
+        public List<Value> getOperands() {
+            return operands;
+        }
+
+        public abstract List<Block> getTargets();
+
+    }
+
+    public static final class Jump extends Terminator {
+
+        private final Block target;
+
+        Jump(Block target) {
+            this.target = target;
+        }
+
+        public Block getTarget() {
+            return target;
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return List.of(target);
+        }
+
+        @Override
+        public String toString() {
+            return "jump " + target;
+        }
+
+    }
+
+    public static final class Branch extends Terminator {
+
+        private final Block ifTrue;
+        private final Block ifFalse;
+
+        Branch(Value condition, Block ifTrue, Block ifFalse) {
+            super(condition);
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        public Value getCondition() {
+            return operands.get(0);
+        }
+
+        public Block getIfTrue() {
+            return ifTrue;
+        }
+
+        public Block getIfFalse() {
+            return ifFalse;
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return List.of(ifTrue, ifFalse);
+        }
+
+        @Override
+        public String toString() {
+            return "branch " + getCondition() + ", " + ifTrue + ", " + ifFalse;
+        }
+
+    }
+
+    /**
+     * Returns from the function, with a value unless it returns nothing.
+     */
+    public static final class Return extends Terminator {
+
+        Return(Value value) {
+            super(value == null ? new Value[0] : new Value[] {value});
+        }
+
+        public Optional<Value> getValue() {
+            return operands.isEmpty() ? Optional.empty() : Optional.of(operands.get(0));
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return "return" + (operands.isEmpty() ? "" : " " + operands.get(0));
+        }
+
+    }
+
+    private static String typeName(Environment.Type type) {
+        return type == null ? "?" : type.getName();
+    }
+
+    private static String join(List<?> items) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(items.get(i));
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,344 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builds the {@link Ir} of an analyzed method, directly in SSA form.
+ *
+ * Uses the algorithm of Braun et al., "Simple and Efficient Construction of
+ * Static Single Assignment Form": the value of each local is tracked per
+ * block as statements are lowered, and a read in a block without a
+ * definition looks it up in the predecessors, placing a phi where they
+ * merge. Loop headers aren't sealed until their back edge is known, so
+ * reads there create incomplete phis that are filled in when it is.
+ *
+ * Each declaration is a separate variable, named after the local with a
+ * suffix if it shadows another, and blocks restore the locals visible
+ * before them, so a name read after a block refers to what it did before.
+ *
+ * Phis may turn out to be trivial (merging a single value); they are left
+ * for {@link PassManager} to remove. {@code &&} and {@code ||} become
+ * branches, so the right operand is only evaluated when Java would.
+ */
+public final class IrBuilder {
+
+    private final Ir.Function function;
+    private final Map<String, Environment.Type> locals = new HashMap<>();
+    private Map<String, String> visible = new HashMap<>();
+    private final Map<Ir.Block, Map<String, Ir.Value>> definitions = new HashMap<>();
+    private final Map<Ir.Block, Map<String, Ir.Phi>> incomplete = new HashMap<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+    private Ir.Block current;
+
+    private IrBuilder(Ir.Function function) {
+        this.function = function;
+        this.current = function.newBlock();
+        seal(current);
+    }
+
+    public static Ir.Function build(Ast.Method ast) {
+        Environment.Function signature = AstRewriter.decoration(ast::getFunction);
+        IrBuilder builder = new IrBuilder(new Ir.Function(ast.getName(), signature == null ? null : signature.getReturnType()));
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            String name = ast.getParameters().get(i);
+            Environment.Type type = signature == null ? null : signature.getParameterTypes().get(i);
+            Ir.Parameter parameter = new Ir.Parameter(builder.function.nextId(), type, name);
+            builder.function.getParameters().add(parameter);
+            builder.write(builder.declare(name, type), builder.current, parameter);
+        }
+        builder.lower(ast.getStatements());
+        if (builder.current.terminator == null) {
+            builder.terminate(new Ir.Return(null));
+        }
+        return builder.function;
+    }
+
+    /* ============================================================
+       Statements
+       ============================================================ */
+
+    private void lower(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            lower(statement);
+        }
+    }
+
+    private void lower(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            lower(((Ast.Statement.Expression) ast).getExpression());
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            lower((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            lower((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            lower((Ast.Statement.If) ast);
+        } else if (ast instanceof Ast.Statement.For) {
+            lower((Ast.Statement.For) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            lower((Ast.Statement.While) ast);
+        } else if (ast instanceof Ast.Statement.Return) {
+            terminate(new Ir.Return(lower(((Ast.Statement.Return) ast).getValue())));
+            current = function.newBlock();
+            seal(current);
+        } else {
+            throw new AssertionError("Unimplemented statement type " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private void lower(Ast.Statement.Declaration ast) {
+        Environment.Variable variable = AstRewriter.decoration(ast::getVariable);
+        Environment.Type type = variable == null ? null : variable.getType();
+        Ir.Value value = ast.getValue().isPresent()
+                ? lower(ast.getValue().get())
+                : append(new Ir.Constant(function.nextId(), type, null));
+        write(declare(ast.getName(), type), current, value);
+    }
+
+    private void lower(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+            throw new RuntimeException("Expected an access as the receiver of an assignment.");
+        }
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        if (receiver.getReceiver().isPresent()) {
+            Ir.Value object = lower(receiver.getReceiver().get());
+            append(new Ir.SetField(function.nextId(), object, receiver.getName(), lower(ast.getValue())));
+        } else if (visible.containsKey(receiver.getName())) {
+            write(visible.get(receiver.getName()), current, lower(ast.getValue()));
+        } else {
+            append(new Ir.Store(function.nextId(), receiver.getName(), lower(ast.getValue())));
+        }
+    }
+
+    private void lower(Ast.Statement.If ast) {
+        Ir.Value condition = lower(ast.getCondition());
+        Ir.Block then = function.newBlock();
+        Ir.Block otherwise = function.newBlock();
+        Ir.Block join = function.newBlock();
+        terminate(new Ir.Branch(condition, then, otherwise));
+        seal(then);
+        seal(otherwise);
+        current = then;
+        block(ast.getThenStatements());
+        terminate(new Ir.Jump(join));
+        current = otherwise;
+        block(ast.getElseStatements());
+        terminate(new Ir.Jump(join));
+        seal(join);
+        current = join;
+    }
+
+    private void lower(Ast.Statement.For ast) {
+        Map<String, String> outer = visible;
+        visible = new HashMap<>(visible);
+        if (ast.getInitialization() != null) {
+            lower(ast.getInitialization());
+        }
+        loop(ast.getCondition(), ast.getStatements(), ast.getIncrement());
+        visible = outer;
+    }
+
+    private void lower(Ast.Statement.While ast) {
+        loop(ast.getCondition(), ast.getStatements(), null);
+    }
+
+    /**
+     * Lowers a loop evaluating {@code condition} (always true if null) in a
+     * header block, which is sealed once the body has jumped back to it.
+     */
+    private void loop(Ast.Expression condition, List<Ast.Statement> statements, Ast.Statement increment) {
+        Ir.Block header = function.newBlock();
+        terminate(new Ir.Jump(header));
+        current = header;
+        Ir.Block body = function.newBlock();
+        Ir.Block exit = function.newBlock();
+        if (condition != null) {
+            terminate(new Ir.Branch(lower(condition), body, exit));
+        } else {
+            terminate(new Ir.Jump(body));
+        }
+        seal(body);
+        current = body;
+        block(statements);
+        if (increment != null) {
+            lower(increment);
+        }
+        terminate(new Ir.Jump(header));
+        seal(header);
+        seal(exit);
+        current = exit;
+    }
+
+    /* ============================================================
+       Expressions
+       ============================================================ */
+
+    private Ir.Value lower(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return append(new Ir.Constant(function.nextId(), AstRewriter.decoration(ast::getType),
+                    ((Ast.Expression.Literal) ast).getLiteral()));
+        } else if (ast instanceof Ast.Expression.Group) {
+            return lower(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return lower((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return lower((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return lower((Ast.Expression.Function) ast);
+        } else {
+            throw new AssertionError("Unimplemented expression type " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private Ir.Value lower(Ast.Expression.Binary ast) {
+        switch (ast.getOperator()) {
+            case "&&":
+            case "AND":
+                return shortCircuit(ast, false);
+            case "||":
+            case "OR":
+                return shortCircuit(ast, true);
+            default:
+                Ir.Value left = lower(ast.getLeft());
+                Ir.Value right = lower(ast.getRight());
+                return append(new Ir.Binary(function.nextId(), AstRewriter.decoration(ast::getType), ast.getOperator(), left, right));
+        }
+    }
+
+    /**
+     * Lowers {@code &&} (or {@code ||} if {@code result} is true), which
+     * skips the right operand and produces {@code result} when the left one
+     * is {@code result}.
+     */
+    private Ir.Value shortCircuit(Ast.Expression.Binary ast, boolean result) {
+        Ir.Value left = lower(ast.getLeft());
+        Ir.Value skipped = append(new Ir.Constant(function.nextId(), Environment.Type.BOOLEAN, result));
+        Ir.Block from = current;
+        Ir.Block right = function.newBlock();
+        Ir.Block join = function.newBlock();
+        terminate(result ? new Ir.Branch(left, join, right) : new Ir.Branch(left, right, join));
+        seal(right);
+        current = right;
+        Ir.Value value = lower(ast.getRight());
+        Ir.Block to = current;
+        terminate(new Ir.Jump(join));
+        seal(join);
+        current = join;
+        Ir.Phi phi = new Ir.Phi(function.nextId(), Environment.Type.BOOLEAN, join);
+        for (Ir.Block predecessor : join.predecessors) {
+            phi.operands.add(predecessor == from ? skipped : value);
+        }
+        join.phis.add(phi);
+        return phi;
+    }
+
+    private Ir.Value lower(Ast.Expression.Access ast) {
+        Environment.Type type = AstRewriter.decoration(ast::getType);
+        if (ast.getReceiver().isPresent()) {
+            return append(new Ir.GetField(function.nextId(), type, lower(ast.getReceiver().get()), ast.getName()));
+        } else if (visible.containsKey(ast.getName())) {
+            return read(visible.get(ast.getName()), current);
+        } else {
+            return append(new Ir.Load(function.nextId(), type, ast.getName()));
+        }
+    }
+
+    private Ir.Value lower(Ast.Expression.Function ast) {
+        Optional<Ir.Value> receiver = ast.getReceiver().map(this::lower);
+        List<Ir.Value> arguments = new ArrayList<>();
+        for (Ast.Expression argument : ast.getArguments()) {
+            arguments.add(lower(argument));
+        }
+        return append(new Ir.Call(function.nextId(), AstRewriter.decoration(ast::getFunction), ast.getName(), receiver, arguments));
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    /**
+     * Lowers the statements of a block, whose declarations go out of scope
+     * at its end.
+     */
+    private void block(List<Ast.Statement> statements) {
+        Map<String, String> outer = visible;
+        visible = new HashMap<>(visible);
+        lower(statements);
+        visible = outer;
+    }
+
+    /**
+     * Declares a local in the current block, returning the name of its
+     * variable: the local's own, or with a suffix if that is taken.
+     */
+    private String declare(String name, Environment.Type type) {
+        String variable = locals.containsKey(name) ? name + "#" + locals.size() : name;
+        locals.put(variable, type);
+        visible.put(name, variable);
+        return variable;
+    }
+
+    private Ir.Value append(Ir.Instruction instruction) {
+        current.instructions.add(instruction);
+        return instruction;
+    }
+
+    private void terminate(Ir.Terminator terminator) {
+        current.terminator = terminator;
+        for (Ir.Block target : terminator.getTargets()) {
+            target.predecessors.add(current);
+        }
+    }
+
+    private void write(String name, Ir.Block block, Ir.Value value) {
+        definitions.computeIfAbsent(block, b -> new HashMap<>()).put(name, value);
+    }
+
+    private Ir.Value read(String name, Ir.Block block) {
+        Map<String, Ir.Value> defined = definitions.get(block);
+        if (defined != null && defined.containsKey(name)) {
+            return defined.get(name);
+        }
+        Ir.Value value;
+        if (!sealed.contains(block)) {
+            Ir.Phi phi = new Ir.Phi(function.nextId(), locals.get(name), block);
+            block.phis.add(phi);
+            incomplete.computeIfAbsent(block, b -> new HashMap<>()).put(name, phi);
+            value = phi;
+        } else if (block.predecessors.size() == 1) {
+            value = read(name, block.predecessors.get(0));
+        } else if (block.predecessors.isEmpty()) {
+            // Unreachable code, or a local read before being assigned.
+            value = new Ir.Constant(function.nextId(), locals.get(name), null);
+            block.instructions.add(0, (Ir.Instruction) value);
+        } else {
+            Ir.Phi phi = new Ir.Phi(function.nextId(), locals.get(name), block);
+            block.phis.add(phi);
+            write(name, block, phi);
+            addOperands(name, phi);
+            value = phi;
+        }
+        write(name, block, value);
+        return value;
+    }
+
+    private void addOperands(String name, Ir.Phi phi) {
+        for (Ir.Block predecessor : phi.getBlock().predecessors) {
+            phi.operands.add(read(name, predecessor));
+        }
+    }
+
+    private void seal(Ir.Block block) {
+        for (Map.Entry<String, Ir.Phi> entry : incomplete.getOrDefault(block, Map.of()).entrySet()) {
+            addOperands(entry.getKey(), entry.getValue());
+        }
+        incomplete.remove(block);
+        sealed.add(block);
+    }
+
+}
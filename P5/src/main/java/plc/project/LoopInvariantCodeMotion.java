@@ -0,0 +1,210 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Hoists expressions whose value can't change between iterations out of
+ * WHILE and FOR loops, computing them once into a temporary declared
+ * before the loop.
+ *
+ * An expression is invariant if it is pure and every variable it reads is
+ * neither assigned nor declared anywhere in the loop (including its header
+ * and nested loops). Fields may also be changed by any call, so an
+ * expression reading a field is only invariant in a loop without calls.
+ * Pure expressions can't fail, so hoisting one out of a loop that never
+ * runs, or from a branch that isn't taken, is harmless. Integer arithmetic
+ * can fail when the Generator is specialized, as it then throws on
+ * overflow, so it is only hoisted if {@link #setExact} isn't set.
+ *
+ * Only the largest invariant expressions are hoisted, skipping literals and
+ * plain variables, and equal expressions share a temporary. Temporaries are
+ * named {@code inv$N}, which can't clash with source identifiers, and need
+ * the analyzer's type on the expression to be declared.
+ */
+public final class LoopInvariantCodeMotion extends AstRewriter {
+
+    /**
+     * Names of the parameters and locals of the method being rewritten;
+     * every other variable is a field.
+     */
+    private Set<String> locals = new HashSet<>();
+    private int temporaries = 0;
+    private boolean exact = false;
+
+    /**
+     * Treats Integer arithmetic as throwing on overflow, for code generated
+     * by a specialized {@link Generator}.
+     */
+    public void setExact(boolean exact) {
+        this.exact = exact;
+    }
+
+    @Override
+    public Ast.Method rewrite(Ast.Method ast) {
+        locals = new HashSet<>(ast.getParameters());
+        contains(ast.getStatements(), s -> {
+            if (s instanceof Ast.Statement.Declaration) {
+                locals.add(((Ast.Statement.Declaration) s).getName());
+            }
+            return false;
+        });
+        temporaries = 0;
+        return super.rewrite(ast);
+    }
+
+    @Override
+    public List<Ast.Statement> rewrite(Ast.Statement.While ast) {
+        List<Ast.Statement> rewritten = super.rewrite(ast);
+        return hoist(rewritten.get(0));
+    }
+
+    @Override
+    public List<Ast.Statement> rewrite(Ast.Statement.For ast) {
+        List<Ast.Statement> rewritten = super.rewrite(ast);
+        return hoist(rewritten.get(0));
+    }
+
+    /* ============================================================
+       Helpers
+       ============================================================ */
+
+    private List<Ast.Statement> hoist(Ast.Statement loop) {
+        Effects effects = new Effects();
+        effects.rewrite(loop);
+        Hoister hoister = new Hoister(effects);
+        List<Ast.Statement> rewritten = hoister.rewrite(loop);
+        if (hoister.declarations.isEmpty()) {
+            return rewritten;
+        }
+        List<Ast.Statement> result = new ArrayList<>(hoister.declarations);
+        result.addAll(rewritten);
+        return result;
+    }
+
+    private static boolean isTrivial(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Group) {
+            return isTrivial(((Ast.Expression.Group) ast).getExpression());
+        }
+        return ast instanceof Ast.Expression.Literal || ast instanceof Ast.Expression.Access;
+    }
+
+    private static Ast.Expression ungroup(Ast.Expression ast) {
+        while (ast instanceof Ast.Expression.Group) {
+            ast = ((Ast.Expression.Group) ast).getExpression();
+        }
+        return ast;
+    }
+
+    /**
+     * Collects the variables assigned or declared in a loop, and whether it
+     * makes any calls, leaving it unchanged.
+     */
+    private static final class Effects extends AstRewriter {
+
+        private final Set<String> assigned = new HashSet<>();
+        private boolean calls = false;
+
+        @Override
+        public List<Ast.Statement> rewrite(Ast.Statement.Declaration ast) {
+            assigned.add(ast.getName());
+            return super.rewrite(ast);
+        }
+
+        @Override
+        public List<Ast.Statement> rewrite(Ast.Statement.Assignment ast) {
+            if (ast.getReceiver() instanceof Ast.Expression.Access
+                    && !((Ast.Expression.Access) ast.getReceiver()).getReceiver().isPresent()) {
+                assigned.add(((Ast.Expression.Access) ast.getReceiver()).getName());
+            }
+            return super.rewrite(ast);
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Function ast) {
+            calls = true;
+            return super.rewrite(ast);
+        }
+
+    }
+
+    /**
+     * Replaces the largest invariant expressions in a loop with accesses to
+     * temporaries, collecting their declarations.
+     */
+    private final class Hoister extends AstRewriter {
+
+        private final Effects effects;
+        private final List<Ast.Statement.Declaration> declarations = new ArrayList<>();
+        private final Reads reads = new Reads();
+
+        private Hoister(Effects effects) {
+            this.effects = effects;
+        }
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression ast) {
+            if (isTrivial(ast) || !isInvariant(ast)) {
+                return super.rewrite(ast);
+            }
+            Ast.Expression value = ungroup(ast);
+            Environment.Type type = decoration(value::getType);
+            if (type == null) {
+                return super.rewrite(ast);
+            }
+            for (Ast.Statement.Declaration declaration : declarations) {
+                if (declaration.getValue().get().equals(value)) {
+                    return access(declaration.getVariable());
+                }
+            }
+            String name = "inv$" + temporaries++;
+            Environment.Variable variable = new Environment.Variable(name, name, type, false, Environment.NIL);
+            Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, Optional.of(type.getName()), Optional.of(value));
+            declaration.setVariable(variable);
+            declarations.add(declaration);
+            return access(variable);
+        }
+
+        private boolean isInvariant(Ast.Expression ast) {
+            if (!isPure(ast, exact)) {
+                return false;
+            }
+            reads.names.clear();
+            reads.rewrite(ast);
+            for (String name : reads.names) {
+                if (effects.assigned.contains(name) || effects.calls && !locals.contains(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Ast.Expression access(Environment.Variable variable) {
+            Ast.Expression.Access access = new Ast.Expression.Access(Optional.empty(), variable.getName());
+            access.setVariable(variable);
+            return access;
+        }
+
+    }
+
+    /**
+     * Collects the names of the variables an expression reads.
+     */
+    private static final class Reads extends AstRewriter {
+
+        private final Set<String> names = new HashSet<>();
+
+        @Override
+        public Ast.Expression rewrite(Ast.Expression.Access ast) {
+            if (!ast.getReceiver().isPresent()) {
+                names.add(ast.getName());
+            }
+            return super.rewrite(ast);
+        }
+
+    }
+
+}
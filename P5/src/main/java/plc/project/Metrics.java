@@ -0,0 +1,84 @@
+package plc.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters for the generator, and the JFR events recording
+ * them. Every source generated is recorded as a {@code plc.project.Stage} event,
+ * and the counters are sampled into a {@code plc.project.Counters} event
+ * every second while a recording is active, so a slow run can be attributed
+ * without attaching a profiler.
+ *
+ * Counters only ever increase; sample them twice to get a rate.
+ */
+public final class Metrics {
+
+    static final LongAdder SOURCES = new LongAdder();
+    static final LongAdder EXCEPTIONS = new LongAdder();
+
+    static {
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+            CountersEvent event = new CountersEvent();
+            event.sources = SOURCES.sum();
+            event.exceptions = EXCEPTIONS.sum();
+            event.commit();
+        });
+    }
+
+    private Metrics() {}
+
+    /**
+     * Returns the number of sources generated.
+     */
+    public static long getSources() {
+        return SOURCES.sum();
+    }
+
+    /**
+     * Returns the number of sources that failed to generate.
+     */
+    public static long getExceptions() {
+        return EXCEPTIONS.sum();
+    }
+
+    @Name("plc.project.Stage")
+    @Label("Pipeline Stage")
+    @Category("PLC")
+    @Description("One run of a compiler pipeline stage.")
+    static final class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Declarations")
+        long items;
+
+        StageEvent(String stage) {
+            this.stage = stage;
+        }
+
+    }
+
+    @Name("plc.project.Counters")
+    @Label("Generator Counters")
+    @Category("PLC")
+    @Period("1 s")
+    static final class CountersEvent extends Event {
+
+        @Label("Sources Generated")
+        long sources;
+
+        @Label("Exceptions")
+        long exceptions;
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a sequence of passes over an {@link Ir.Function}, repeating it until
+ * no pass changes anything, since each pass can expose more work for the
+ * others (e.g. a folded branch makes a block unreachable, whose removal
+ * makes a phi trivial, whose removal lets more constants propagate).
+ */
+public final class PassManager {
+
+    /**
+     * An optimization over the IR, which must keep it in SSA form.
+     */
+    public interface Pass {
+
+        /**
+         * Transforms the function in place, returning whether anything
+         * changed.
+         */
+        boolean run(Ir.Function function);
+
+    }
+
+    static final int MAX_ITERATIONS = 16;
+
+    private final List<Pass> passes;
+
+    public PassManager(Pass... passes) {
+        this.passes = new ArrayList<>(Arrays.asList(passes));
+    }
+
+    /**
+     * Returns a pass manager running the standard optimizations.
+     */
+    public static PassManager standard() {
+        return new PassManager(
+                new CfgSimplifier(),
+                new ConstantPropagation(),
+                new GlobalValueNumbering(),
+                new DeadValueEliminator()
+        );
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public List<Pass> getPasses() {
+        return passes;
+    }
+
+    /**
+     * Runs the passes until none of them changes the function, or
+     * {@link #MAX_ITERATIONS} rounds have run, returning the function.
+     */
+    public Ir.Function run(Ir.Function function) {
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            boolean changed = false;
+            for (Pass pass : passes) {
+                changed |= pass.run(function);
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        return function;
+    }
+
+}
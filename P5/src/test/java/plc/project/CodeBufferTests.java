@@ -0,0 +1,67 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class CodeBufferTests {
+
+    /**
+     * Writes several chunks of text, with a surrogate pair across the end
+     * of the first, to a file and rewinds within what is not yet flushed.
+     */
+    @Test
+    void testFileChannel() throws IOException {
+        Path path = Files.createTempFile("generated", ".java");
+        StringBuilder expected = new StringBuilder();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CodeBuffer buffer = new CodeBuffer(channel);
+            String text = "a".repeat(CodeBuffer.CHUNK - 1) + "😀" + "é".repeat(CodeBuffer.CHUNK);
+            buffer.append(text);
+            expected.append(text);
+            buffer.flush();
+
+            long mark = buffer.mark();
+            buffer.append("int x;");
+            Assertions.assertEquals(';', buffer.last());
+            buffer.rewind(buffer.mark() - 1);
+            buffer.append(')');
+            expected.append("int x)");
+            buffer.flush();
+            Assertions.assertThrows(IllegalStateException.class, () -> buffer.rewind(mark));
+        }
+        Assertions.assertEquals(expected.toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        Files.delete(path);
+    }
+
+    /**
+     * Flushes a full chunk ending in the first half of a surrogate pair,
+     * then ends the text with a lone one, which is an error rather than
+     * being dropped.
+     */
+    @Test
+    void testSplitSurrogatePair() throws IOException {
+        Path path = Files.createTempFile("generated", ".java");
+        String text = "a".repeat(CodeBuffer.CHUNK - 1) + "😀";
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CodeBuffer buffer = new CodeBuffer(channel);
+            buffer.append(text.substring(0, CodeBuffer.CHUNK));
+            buffer.flushIfFull();
+            buffer.append(text.substring(CodeBuffer.CHUNK));
+            buffer.flush();
+
+            buffer.append(text.substring(0, CodeBuffer.CHUNK));
+            Assertions.assertThrows(UncheckedIOException.class, buffer::flush);
+        }
+        Assertions.assertEquals(text + "a".repeat(CodeBuffer.CHUNK - 1), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        Files.delete(path);
+    }
+
+}
@@ -0,0 +1,152 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class ConstantFolderTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testExpression(String test, Ast.Expression ast, String expected) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(new ConstantFolder().rewrite(ast));
+        Assertions.assertEquals(expected, writer.toString());
+    }
+
+    private static Stream<Arguments> testExpression() {
+        return Stream.of(
+                Arguments.of("Integer Arithmetic",
+                        // (1 + 2) * x
+                        binary("*", new Ast.Expression.Group(binary("+", integer(1), integer(2))), access("x")),
+                        "3 * x"
+                ),
+                Arguments.of("Integer Overflow",
+                        // 2147483647 + 1
+                        binary("+", integer(Integer.MAX_VALUE), integer(1)),
+                        "2147483647 + 1"
+                ),
+                Arguments.of("Comparison",
+                        // 1 < 2
+                        binary("<", integer(1), integer(2)),
+                        "true"
+                ),
+                Arguments.of("Concatenation",
+                        // "a" + 1 + 'b'
+                        binary("+", binary("+", string("a"), integer(1)), init(new Ast.Expression.Literal('b'), ast -> ast.setType(Environment.Type.CHARACTER))),
+                        "\"a1b\""
+                ),
+                Arguments.of("Decimal",
+                        // 0.1 + 0.2
+                        binary("+", decimal("0.1"), decimal("0.2")),
+                        "0.1 + 0.2"
+                ),
+                Arguments.of("Short Circuit",
+                        // TRUE && x || FALSE
+                        binary("||", binary("&&", bool(true), access("x")), bool(false)),
+                        "x"
+                ),
+                Arguments.of("Redundant Group",
+                        // f((x)) + (y * 2)
+                        binary("+",
+                                new Ast.Expression.Function(Optional.empty(), "f", Arrays.asList(new Ast.Expression.Group(access("x")))),
+                                new Ast.Expression.Group(binary("*", access("y"), integer(2)))),
+                        "f(x) + (y * 2)"
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testIfStatement(String test, Ast.Statement.If ast, String expected) {
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        List<Ast.Statement> statements = new ConstantFolder().rewrite(ast);
+        for (Ast.Statement statement : statements) {
+            generator.visit(statement);
+        }
+        Assertions.assertEquals(expected, writer.toString());
+    }
+
+    private static Stream<Arguments> testIfStatement() {
+        return Stream.of(
+                Arguments.of("True",
+                        // IF 1 < 2 DO print(1); ELSE print(2); END
+                        new Ast.Statement.If(binary("<", integer(1), integer(2)),
+                                Arrays.asList(print(integer(1))), Arrays.asList(print(integer(2)))),
+                        "System.out.println(1);"
+                ),
+                Arguments.of("False Without Else",
+                        // IF FALSE DO print(1); END
+                        new Ast.Statement.If(bool(false), Arrays.asList(print(integer(1))), Arrays.asList()),
+                        ""
+                ),
+                Arguments.of("Infinite Loop",
+                        // IF TRUE DO WHILE TRUE DO print(1); END END
+                        new Ast.Statement.If(bool(true), Arrays.asList(
+                                new Ast.Statement.While(bool(true), Arrays.asList(print(integer(1))))), Arrays.asList()),
+                        String.join(System.lineSeparator(),
+                                "if (true) {",
+                                "    while (true) {",
+                                "        System.out.println(1);",
+                                "    }",
+                                "}"
+                        )
+                ),
+                Arguments.of("Return",
+                        // IF TRUE DO RETURN 1; END
+                        new Ast.Statement.If(bool(true), Arrays.asList(new Ast.Statement.Return(integer(1))), Arrays.asList()),
+                        String.join(System.lineSeparator(),
+                                "if (true) {",
+                                "    return 1;",
+                                "}"
+                        )
+                )
+        );
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return new Ast.Expression.Binary(operator, left, right);
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static Ast.Expression.Literal decimal(String value) {
+        return init(new Ast.Expression.Literal(new BigDecimal(value)), ast -> ast.setType(Environment.Type.DECIMAL));
+    }
+
+    private static Ast.Expression.Literal string(String value) {
+        return init(new Ast.Expression.Literal(value), ast -> ast.setType(Environment.Type.STRING));
+    }
+
+    private static Ast.Expression.Literal bool(boolean value) {
+        return init(new Ast.Expression.Literal(value), ast -> ast.setType(Environment.Type.BOOLEAN));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Statement.Expression print(Ast.Expression argument) {
+        return new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(argument)));
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}
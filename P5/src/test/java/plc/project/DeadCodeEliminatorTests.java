@@ -0,0 +1,137 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class DeadCodeEliminatorTests {
+
+    /**
+     * DEF main(): Integer DO
+     *     LET y = 1;
+     *     LET x = y;
+     *     LET z = side();
+     *     print(helper());
+     *     RETURN 0;
+     *     print(1);
+     * END
+     * DEF helper(): Integer DO RETURN 1; END
+     * DEF side(): Integer DO RETURN 2; END
+     * DEF dead(): Integer DO RETURN dead(); END
+     */
+    @Test
+    void testSource() {
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                method("main", Arrays.asList(
+                        new Ast.Statement.Declaration("y", Optional.of(integer(1))),
+                        new Ast.Statement.Declaration("x", Optional.of(new Ast.Expression.Access(Optional.empty(), "y"))),
+                        init(new Ast.Statement.Declaration("z", Optional.of(call("side"))), ast -> ast.setVariable(
+                                new Environment.Variable("z", "z", Environment.Type.INTEGER, false, Environment.NIL))),
+                        new Ast.Statement.Expression(call("print", call("helper"))),
+                        new Ast.Statement.Return(integer(0)),
+                        new Ast.Statement.Expression(call("print", integer(1)))
+                )),
+                method("helper", Arrays.asList(new Ast.Statement.Return(integer(1)))),
+                method("side", Arrays.asList(new Ast.Statement.Return(integer(2)))),
+                method("dead", Arrays.asList(new Ast.Statement.Return(call("dead"))))
+        ));
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(new DeadCodeEliminator().rewrite(source));
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "public class Main {",
+                "",
+                "    public static void main(String[] args) {",
+                "        System.exit(new Main().main());",
+                "    }",
+                "",
+                "    int main() {",
+                "        int z = side();",
+                "        System.out.println(helper());",
+                "        return 0;",
+                "    }",
+                "",
+                "    int helper() {",
+                "        return 1;",
+                "    }",
+                "",
+                "    int side() {",
+                "        return 2;",
+                "    }",
+                "",
+                "}"
+        ), writer.toString());
+    }
+
+    /**
+     * DEF main(): Integer DO
+     *     LET y = 1;
+     *     LET x = y * y;
+     *     RETURN 0;
+     * END
+     *
+     * y * y may overflow, so x is kept.
+     */
+    @Test
+    void testExact() {
+        Ast.Expression.Access y = init(new Ast.Expression.Access(Optional.empty(), "y"), ast -> ast.setVariable(variable("y")));
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                method("main", Arrays.asList(
+                        init(new Ast.Statement.Declaration("y", Optional.of(integer(1))), ast -> ast.setVariable(variable("y"))),
+                        init(new Ast.Statement.Declaration("x", Optional.of(init(new Ast.Expression.Binary("*", y, y),
+                                ast -> ast.setType(Environment.Type.INTEGER)))), ast -> ast.setVariable(variable("x"))),
+                        new Ast.Statement.Return(integer(0))
+                ))
+        ));
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        eliminator.setExact(true);
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        generator.setSpecialized(true);
+        generator.visit(eliminator.rewrite(source));
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "public class Main {",
+                "",
+                "    public static void main(String[] args) {",
+                "        System.exit(new Main().main());",
+                "    }",
+                "",
+                "    int main() {",
+                "        int y = 1;",
+                "        int x = Math.multiplyExact(y, y);",
+                "        return 0;",
+                "    }",
+                "",
+                "}"
+        ), writer.toString());
+    }
+
+    private static Environment.Variable variable(String name) {
+        return new Environment.Variable(name, name, Environment.Type.INTEGER, false, Environment.NIL);
+    }
+
+    private static Ast.Method method(String name, List<Ast.Statement> statements) {
+        return init(new Ast.Method(name, Arrays.asList(), Arrays.asList(), Optional.of("Integer"), statements),
+                ast -> ast.setFunction(new Environment.Function(name, name, Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)));
+    }
+
+    private static Ast.Expression.Function call(String name, Ast.Expression... arguments) {
+        return new Ast.Expression.Function(Optional.empty(), name, Arrays.asList(arguments));
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}
@@ -272,6 +272,59 @@ public class GeneratorTests {
         );
     }
 
+    /**
+     * DEF f(n: Integer): Decimal DO
+     *     LET count: Any = n * 2;
+     *     LET flag: Any = TRUE;
+     *     IF n > 0 AND flag == TRUE DO
+     *         count = n - 1;
+     *     END
+     *     RETURN n / 2;
+     * END
+     */
+    @Test
+    void testSpecialized() {
+        Ast.Method method = init(new Ast.Method("f", Arrays.asList("n"), Arrays.asList("Integer"), Optional.of("Decimal"), Arrays.asList(
+                init(new Ast.Statement.Declaration("count", Optional.of("Any"), Optional.of(binary("*", access("n", Environment.Type.INTEGER), integer(2), Environment.Type.INTEGER))),
+                        ast -> ast.setVariable(new Environment.Variable("count", "count", Environment.Type.ANY, false, Environment.NIL))),
+                init(new Ast.Statement.Declaration("flag", Optional.of("Any"), Optional.of(init(new Ast.Expression.Literal(true), ast -> ast.setType(Environment.Type.BOOLEAN)))),
+                        ast -> ast.setVariable(new Environment.Variable("flag", "flag", Environment.Type.ANY, false, Environment.NIL))),
+                new Ast.Statement.If(binary("AND",
+                        binary(">", access("n", Environment.Type.INTEGER), integer(0), Environment.Type.BOOLEAN),
+                        binary("==", access("flag", Environment.Type.ANY), init(new Ast.Expression.Literal(true), ast -> ast.setType(Environment.Type.BOOLEAN)), Environment.Type.BOOLEAN),
+                        Environment.Type.BOOLEAN), Arrays.asList(
+                        new Ast.Statement.Assignment(access("count", Environment.Type.ANY), binary("-", access("n", Environment.Type.INTEGER), integer(1), Environment.Type.INTEGER))
+                ), Arrays.asList()),
+                new Ast.Statement.Return(binary("/", access("n", Environment.Type.INTEGER), integer(2), Environment.Type.DECIMAL))
+        )), ast -> ast.setFunction(new Environment.Function("f", "f", Arrays.asList(Environment.Type.INTEGER), Environment.Type.DECIMAL, args -> Environment.NIL)));
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        generator.setSpecialized(true);
+        generator.visit(method);
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "double f(int n) {",
+                "    int count = Math.multiplyExact(n, 2);",
+                "    Object flag = true;",
+                "    if (n > 0 && flag == true) {",
+                "        count = Math.subtractExact(n, 1);",
+                "    }",
+                "    return (double) n / 2;",
+                "}"
+        ), writer.toString());
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right, Environment.Type type) {
+        return init(new Ast.Expression.Binary(operator, left, right), ast -> ast.setType(type));
+    }
+
+    private static Ast.Expression.Access access(String name, Environment.Type type) {
+        return init(new Ast.Expression.Access(Optional.empty(), name), ast -> ast.setVariable(new Environment.Variable(name, name, type, false, Environment.NIL)));
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
     /**
      * Helper function for tests, using a StringWriter as the output stream.
      */
@@ -0,0 +1,120 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class InlinerTests {
+
+    /**
+     * LET count: Integer = 0;
+     * DEF square(x: Integer): Integer DO RETURN x * x; END
+     * DEF get(): Integer DO RETURN count; END
+     * DEF main(): Integer DO
+     *     LET y: Integer = 3;
+     *     print(square(y) + square(-2) + square(y + 1) + get());
+     *     LET count: Integer = 1;
+     *     RETURN count;
+     * END
+     */
+    @Test
+    void testSource() {
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                method("square", Arrays.asList("x"), Arrays.asList(
+                        new Ast.Statement.Return(binary("*", access("x"), access("x")))
+                )),
+                method("get", Arrays.asList(), Arrays.asList(new Ast.Statement.Return(access("count")))),
+                method("main", Arrays.asList(), Arrays.asList(
+                        declaration("y", integer(3)),
+                        new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(
+                                binary("+", binary("+", binary("+",
+                                        call("square", access("y")),
+                                        call("square", integer(-2))),
+                                        call("square", binary("+", access("y"), integer(1)))),
+                                        call("get"))
+                        ))),
+                        declaration("count", integer(1)),
+                        new Ast.Statement.Return(access("count"))
+                ))
+        ));
+        Ast.Method main = new Inliner().rewrite(source).getMethods().get(2);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(main.getStatements().get(1));
+        Assertions.assertEquals("System.out.println((y * y) + ((-2) * (-2)) + square(y + 1) + get());", writer.toString());
+    }
+
+    /**
+     * DEF wide(x: Integer): Any DO RETURN x * x; END
+     * DEF main(): Integer DO print(wide(2) == wide(3)); RETURN 0; END
+     *
+     * Inlining would compare ints instead of the Objects returned.
+     */
+    @Test
+    void testReturnType() {
+        Ast.Method wide = init(new Ast.Method("wide", Arrays.asList("x"), Arrays.asList(
+                new Ast.Statement.Return(binary("*", access("x"), access("x")))
+        )), ast -> ast.setFunction(new Environment.Function("wide", "wide", Arrays.asList(Environment.Type.INTEGER), Environment.Type.ANY, args -> Environment.NIL)));
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                wide,
+                method("main", Arrays.asList(), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(
+                                init(new Ast.Expression.Binary("==", call("wide", integer(2)), call("wide", integer(3))),
+                                        ast -> ast.setType(Environment.Type.BOOLEAN))
+                        ))),
+                        new Ast.Statement.Return(integer(0))
+                ))
+        ));
+        Ast.Method main = new Inliner().rewrite(source).getMethods().get(1);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(main.getStatements().get(0));
+        Assertions.assertEquals("System.out.println(wide(2) == wide(3));", writer.toString());
+    }
+
+    private static Ast.Method method(String name, List<String> parameters, List<Ast.Statement> statements) {
+        List<Environment.Type> types = Arrays.asList(new Environment.Type[parameters.size()]);
+        types.replaceAll(t -> Environment.Type.INTEGER);
+        return init(new Ast.Method(name, parameters, statements),
+                ast -> ast.setFunction(new Environment.Function(name, name, types, Environment.Type.INTEGER, args -> Environment.NIL)));
+    }
+
+    private static Ast.Statement.Declaration declaration(String name, Ast.Expression value) {
+        return init(new Ast.Statement.Declaration(name, Optional.of("Integer"), Optional.of(value)),
+                ast -> ast.setVariable(variable(name)));
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return init(new Ast.Expression.Binary(operator, left, right), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static Ast.Expression.Function call(String name, Ast.Expression... arguments) {
+        List<Environment.Type> types = Arrays.asList(new Environment.Type[arguments.length]);
+        types.replaceAll(t -> Environment.Type.INTEGER);
+        return init(new Ast.Expression.Function(Optional.empty(), name, Arrays.asList(arguments)),
+                ast -> ast.setFunction(new Environment.Function(name, name, types, Environment.Type.INTEGER, args -> Environment.NIL)));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return init(new Ast.Expression.Access(Optional.empty(), name), ast -> ast.setVariable(variable(name)));
+    }
+
+    private static Environment.Variable variable(String name) {
+        return new Environment.Variable(name, name, Environment.Type.INTEGER, false, Environment.NIL);
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}
@@ -0,0 +1,143 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class IrTests {
+
+    /**
+     * DEF f(n: Integer): Integer DO
+     *     LET x = 1 + 2;
+     *     LET i = 0;
+     *     WHILE i < n AND n > 0 DO
+     *         i = i + x * n;
+     *         IF x == 3 DO
+     *             print(n * x);
+     *         END
+     *     END
+     *     RETURN i;
+     * END
+     *
+     * x is folded to 3, so the IF always runs and its n * x is the x * n
+     * computed before it.
+     */
+    @Test
+    void testMethod() {
+        Ast.Method method = init(new Ast.Method("f", Arrays.asList("n"), Arrays.asList(
+                declaration("x", binary("+", integer(1), integer(2))),
+                declaration("i", integer(0)),
+                new Ast.Statement.While(binary("AND", binary("<", access("i"), access("n")), binary(">", access("n"), integer(0))), Arrays.asList(
+                        new Ast.Statement.Assignment(access("i"), binary("+", access("i"), binary("*", access("x"), access("n")))),
+                        new Ast.Statement.If(binary("==", access("x"), integer(3)), Arrays.asList(
+                                new Ast.Statement.Expression(init(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(binary("*", access("n"), access("x")))),
+                                        ast -> ast.setFunction(new Environment.Function("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL))))
+                        ), Arrays.asList())
+                )),
+                new Ast.Statement.Return(access("i"))
+        )), ast -> ast.setFunction(new Environment.Function("f", "f", Arrays.asList(Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL)));
+        Ir.Function function = PassManager.standard().run(IrBuilder.build(method));
+        Assertions.assertEquals(String.join("\n",
+                "def f(v0 n: Integer): Integer",
+                "b0:",
+                "    v25: Integer = const 3",
+                "    v4: Integer = const 0",
+                "    jump b1",
+                "b1: ; preds b0, b2",
+                "    v5: Integer = phi v4, v17",
+                "    v7: Boolean = v5 < v0",
+                "    v8: Boolean = const false",
+                "    branch v7, b4, b5",
+                "b2: ; preds b5",
+                "    v16: Integer = v25 * v0",
+                "    v17: Integer = v5 + v16",
+                "    v21: Nil = call print(v16)",
+                "    jump b1",
+                "b3: ; preds b5",
+                "    return v5",
+                "b4: ; preds b1",
+                "    v10: Boolean = v0 > v4",
+                "    jump b5",
+                "b5: ; preds b1, b4",
+                "    v11: Boolean = phi v8, v10",
+                "    branch v11, b2, b3"
+        ) + "\n", function.toString());
+    }
+
+    /**
+     * DEF g(n: Integer): Integer DO
+     *     LET y = 1;
+     *     IF n > 0 DO
+     *         LET y = 2;
+     *         LET z = y;
+     *         print(z);
+     *     END
+     *     print(z);
+     *     RETURN y;
+     * END
+     *
+     * The inner y and z go out of scope after the IF, where z is a field.
+     */
+    @Test
+    void testShadowing() {
+        Environment.Function print = new Environment.Function("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+        Ast.Method method = init(new Ast.Method("g", Arrays.asList("n"), Arrays.asList(
+                declaration("y", integer(1)),
+                new Ast.Statement.If(binary(">", access("n"), integer(0)), Arrays.asList(
+                        declaration("y", integer(2)),
+                        declaration("z", access("y")),
+                        new Ast.Statement.Expression(init(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(access("z"))), ast -> ast.setFunction(print)))
+                ), Arrays.asList()),
+                new Ast.Statement.Expression(init(new Ast.Expression.Function(Optional.empty(), "print", Arrays.asList(access("z"))), ast -> ast.setFunction(print))),
+                new Ast.Statement.Return(access("y"))
+        )), ast -> ast.setFunction(new Environment.Function("g", "g", Arrays.asList(Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL)));
+        Ir.Function function = PassManager.standard().run(IrBuilder.build(method));
+        Assertions.assertEquals(String.join("\n",
+                "def g(v0 n: Integer): Integer",
+                "b0:",
+                "    v1: Integer = const 1",
+                "    v2: Integer = const 0",
+                "    v3: Boolean = v0 > v2",
+                "    branch v3, b1, b2",
+                "b1: ; preds b0",
+                "    v4: Integer = const 2",
+                "    v5: Nil = call print(v4)",
+                "    jump b3",
+                "b2: ; preds b0",
+                "    jump b3",
+                "b3: ; preds b1, b2",
+                "    v6: Integer = load z",
+                "    v7: Nil = call print(v6)",
+                "    return v1"
+        ) + "\n", function.toString());
+    }
+
+    private static Ast.Statement.Declaration declaration(String name, Ast.Expression value) {
+        return init(new Ast.Statement.Declaration(name, Optional.empty(), Optional.of(value)),
+                ast -> ast.setVariable(new Environment.Variable(name, name, Environment.Type.INTEGER, false, Environment.NIL)));
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return init(new Ast.Expression.Binary(operator, left, right),
+                ast -> ast.setType(operator.equals("+") || operator.equals("*") ? Environment.Type.INTEGER : Environment.Type.BOOLEAN));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return init(new Ast.Expression.Access(Optional.empty(), name),
+                ast -> ast.setVariable(new Environment.Variable(name, name, Environment.Type.INTEGER, false, Environment.NIL)));
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}
@@ -0,0 +1,124 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class LoopInvariantCodeMotionTests {
+
+    /**
+     * DEF f(n: Integer, a: Integer): Integer DO
+     *     LET i = 0;
+     *     WHILE i < n * 2 DO
+     *         i = i + (a * a) + limit * 2 + a * a;
+     *     END
+     *     WHILE i < limit * 2 DO
+     *         i = g(i);
+     *     END
+     *     RETURN i;
+     * END
+     *
+     * limit is a field, so it may be changed by g() in the second loop.
+     */
+    @Test
+    void testMethod() {
+        Ast.Method method = init(new Ast.Method("f", Arrays.asList("n", "a"), Arrays.asList(
+                init(new Ast.Statement.Declaration("i", Optional.of(integer(0))), ast -> ast.setVariable(variable("i"))),
+                new Ast.Statement.While(binary("<", access("i"), binary("*", access("n"), integer(2))), Arrays.asList(
+                        new Ast.Statement.Assignment(access("i"), binary("+", binary("+", binary("+",
+                                access("i"),
+                                init(new Ast.Expression.Group(binary("*", access("a"), access("a"))), ast -> ast.setType(Environment.Type.INTEGER))),
+                                binary("*", access("limit"), integer(2))),
+                                binary("*", access("a"), access("a"))))
+                )),
+                new Ast.Statement.While(binary("<", access("i"), binary("*", access("limit"), integer(2))), Arrays.asList(
+                        new Ast.Statement.Assignment(access("i"), init(new Ast.Expression.Function(Optional.empty(), "g", Arrays.asList(access("i"))),
+                                ast -> ast.setFunction(new Environment.Function("g", "g", Arrays.asList(Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL))))
+                )),
+                new Ast.Statement.Return(access("i"))
+        )), ast -> ast.setFunction(new Environment.Function("f", "f",
+                Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL)));
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(new LoopInvariantCodeMotion().rewrite(method));
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "int f(int n, int a) {",
+                "    int i = 0;",
+                "    int inv$0 = n * 2;",
+                "    int inv$1 = a * a;",
+                "    int inv$2 = limit * 2;",
+                "    while (i < inv$0) {",
+                "        i = i + inv$1 + inv$2 + inv$1;",
+                "    }",
+                "    while (i < limit * 2) {",
+                "        i = g(i);",
+                "    }",
+                "    return i;",
+                "}"
+        ), writer.toString());
+    }
+
+    /**
+     * DEF f(n: Integer, a: Integer): Integer DO
+     *     LET i = 0;
+     *     WHILE i < n DO i = i + a * a; END
+     *     RETURN i;
+     * END
+     *
+     * a * a may overflow, so it isn't evaluated unless the loop runs.
+     */
+    @Test
+    void testExact() {
+        Ast.Method method = init(new Ast.Method("f", Arrays.asList("n", "a"), Arrays.asList(
+                init(new Ast.Statement.Declaration("i", Optional.of(integer(0))), ast -> ast.setVariable(variable("i"))),
+                new Ast.Statement.While(binary("<", access("i"), access("n")), Arrays.asList(
+                        new Ast.Statement.Assignment(access("i"), binary("+", access("i"), binary("*", access("a"), access("a"))))
+                )),
+                new Ast.Statement.Return(access("i"))
+        )), ast -> ast.setFunction(new Environment.Function("f", "f",
+                Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL)));
+        LoopInvariantCodeMotion licm = new LoopInvariantCodeMotion();
+        licm.setExact(true);
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        generator.setSpecialized(true);
+        generator.visit(licm.rewrite(method));
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "int f(int n, int a) {",
+                "    int i = 0;",
+                "    while (i < n) {",
+                "        i = Math.addExact(i, Math.multiplyExact(a, a));",
+                "    }",
+                "    return i;",
+                "}"
+        ), writer.toString());
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return init(new Ast.Expression.Binary(operator, left, right),
+                ast -> ast.setType(operator.equals("<") ? Environment.Type.BOOLEAN : Environment.Type.INTEGER));
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return init(new Ast.Expression.Access(Optional.empty(), name), ast -> ast.setVariable(variable(name)));
+    }
+
+    private static Environment.Variable variable(String name) {
+        return new Environment.Variable(name, name, Environment.Type.INTEGER, false, Environment.NIL);
+    }
+
+    private static Ast.Expression.Literal integer(long value) {
+        return init(new Ast.Expression.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}